@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * A fake of Android's Handler, which runs the work right away on the calling thread.
+ */
+public class Handler {
+  public Handler(Looper looper) {
+  }
+
+  public boolean post(Runnable r) {
+    r.run();
+    return true;
+  }
+
+  public boolean postDelayed(Runnable r, long delayMillis) {
+    r.run();
+    return true;
+  }
+
+  public void removeCallbacks(Runnable r) {
+  }
+}
@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * A fake of Android's Looper. There's no main looper on the JVM, so this only gives the fake Handler something to take.
+ */
+public class Looper {
+  private static final Looper MAIN = new Looper();
+
+  public static Looper getMainLooper() {
+    return MAIN;
+  }
+}
@@ -0,0 +1,11 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+/**
+ * A fake of the plugin, with the error codes of the classes the benchmarks build.
+ */
+class FlutterNfcAcsPlugin {
+  static final String ERROR_APDU_FAILED = "apdu_failed";
+
+  private FlutterNfcAcsPlugin() {
+  }
+}
@@ -0,0 +1,14 @@
+package io.flutter.plugin.common;
+
+/**
+ * A fake of the Flutter MethodChannel, which only declares the Result the transceive requests complete.
+ */
+public class MethodChannel {
+  public interface Result {
+    void success(Object result);
+
+    void error(String errorCode, String errorMessage, Object errorDetails);
+
+    void notImplemented();
+  }
+}
@@ -0,0 +1,57 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The deduplication of scan results in DeviceScanner, over a scan where each device advertises many times with a noisy
+ * RSSI, and the changes are drained in batches.
+ */
+@State(Scope.Thread)
+public class DeviceDeduplicationBenchmark {
+  @Param({"10", "200"})
+  int deviceCount;
+
+  // The scan results reported during one scan.
+  @Param({"5000"})
+  int reportCount;
+
+  // The changes are drained every this many reports, like the scanner does every batch interval.
+  @Param({"100"})
+  int batchSize;
+
+  private String[] addresses;
+  private int[] rssis;
+  private final byte[] advertisingData = new byte[31];
+  private final DiscoveredDevices devices = new DiscoveredDevices();
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(42);
+    addresses = new String[reportCount];
+    rssis = new int[reportCount];
+    for (int i = 0; i < reportCount; i++) {
+      final int device = random.nextInt(deviceCount);
+      addresses[i] = String.format(Locale.US, "00:11:22:33:%02X:%02X", device >> 8, device & 0xFF);
+      rssis[i] = -60 - random.nextInt(8);
+    }
+  }
+
+  @Benchmark
+  public void scan(Blackhole blackhole) {
+    devices.clear();
+    for (int i = 0; i < reportCount; i++) {
+      devices.onSeen(addresses[i], "ACR1255U-J1", rssis[i], advertisingData, i);
+      if (i % batchSize == 0) {
+        blackhole.consume(devices.drainChanges());
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Merging the responses of a sequence of commands, as CardStreamHandler does for SEND_APDU, TRANSMIT_APDU and
+ * TRANSCEIVE, and reassembling a response that the card returns in 61xx chunks.
+ */
+@State(Scope.Thread)
+public class ResponseMergeBenchmark {
+  @Param({"1", "4", "16"})
+  int responseCount;
+
+  @Param({"16", "250"})
+  int responseSize;
+
+  private final byte[] command = {0x00, (byte) 0xB0, 0x00, 0x00, 0x00};
+  private byte[][] commands;
+  private byte[][] responses;
+  private byte[][] chunks;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(42);
+    commands = new byte[responseCount][];
+    responses = new byte[responseCount][];
+    chunks = new byte[responseCount][];
+
+    for (int i = 0; i < responseCount; i++) {
+      commands[i] = command;
+      responses[i] = new byte[responseSize + 2];
+      random.nextBytes(responses[i]);
+      responses[i][responseSize] = (byte) 0x90;
+      responses[i][responseSize + 1] = 0x00;
+
+      // Every chunk but the last says there's more to fetch.
+      chunks[i] = Arrays.copyOf(responses[i], responses[i].length);
+      if (i < responseCount - 1) {
+        chunks[i][responseSize] = 0x61;
+        chunks[i][responseSize + 1] = (byte) responseSize;
+      }
+    }
+  }
+
+  @Benchmark
+  public Object mergeBinary() {
+    final ApduSequence sequence = new ApduSequence(0, commands, null);
+    for (byte[] response : responses) {
+      sequence.onResponse(response);
+    }
+
+    return sequence.getResult();
+  }
+
+  @Benchmark
+  public String mergeHexString() {
+    final byte[] merged = (byte[]) mergeBinary();
+    return Utils.appendHex(new StringBuilder(), merged, 0, merged.length, true).toString();
+  }
+
+  @Benchmark
+  public byte[] chainGetResponse() {
+    final ResponseChain chain = new ResponseChain();
+    chain.start(command);
+    for (byte[] chunk : chunks) {
+      chain.onResponse(chunk);
+    }
+
+    return chain.getResponse();
+  }
+}
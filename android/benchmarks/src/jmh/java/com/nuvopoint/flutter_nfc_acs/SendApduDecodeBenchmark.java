@@ -0,0 +1,43 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Decoding the Base64 and '|' separated argument of SEND_APDU.
+ */
+@State(Scope.Thread)
+public class SendApduDecodeBenchmark {
+  @Param({"1", "4", "16"})
+  int commandCount;
+
+  @Param({"5", "64"})
+  int commandSize;
+
+  private String encoded;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(42);
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < commandCount; i++) {
+      final byte[] command = new byte[commandSize];
+      random.nextBytes(command);
+      if (i > 0) builder.append('|');
+      builder.append(Base64.getEncoder().encodeToString(command));
+    }
+
+    encoded = builder.toString();
+  }
+
+  @Benchmark
+  public byte[][] decodeApduCommands() {
+    return Utils.decodeApduCommands(encoded);
+  }
+}
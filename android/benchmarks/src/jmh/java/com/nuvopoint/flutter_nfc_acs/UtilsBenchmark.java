@@ -0,0 +1,62 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * The hex encoding and decoding that runs on every tap and log line.
+ */
+@State(Scope.Thread)
+public class UtilsBenchmark {
+  // A UID, a short response, and a multi-KB read.
+  @Param({"7", "256", "4096"})
+  int size;
+
+  private byte[] bytes;
+  private String hex;
+  private char[] chars;
+  private byte[] decoded;
+  private final StringBuilder builder = new StringBuilder();
+
+  @Setup
+  public void setup() {
+    bytes = new byte[size];
+    new Random(42).nextBytes(bytes);
+    hex = Utils.toHexString(bytes);
+    chars = new char[size * 3];
+    decoded = new byte[size];
+  }
+
+  @Benchmark
+  public String toHexString() {
+    return Utils.toHexString(bytes);
+  }
+
+  @Benchmark
+  public char[] encodeHexIntoBuffer() {
+    Utils.encodeHex(bytes, 0, bytes.length, chars, 0, true);
+    return chars;
+  }
+
+  @Benchmark
+  public StringBuilder appendHexToReusedBuilder() {
+    builder.setLength(0);
+    return Utils.appendHex(builder, bytes, 0, bytes.length, true);
+  }
+
+  @Benchmark
+  public byte[] toByteArray() {
+    return Utils.toByteArray(hex);
+  }
+
+  @Benchmark
+  public byte[] decodeHexIntoBuffer() {
+    Utils.decodeHex(hex, decoded, 0);
+    return decoded;
+  }
+}
@@ -0,0 +1,79 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import com.acs.bluetooth.Acr1255uj1Reader;
+
+/**
+ * A CardReader backed by a physical ACR1255U-J1, through the ACS SDK.
+ */
+class AcsCardReader implements CardReader {
+  private final Acr1255uj1Reader reader;
+
+  AcsCardReader(Acr1255uj1Reader reader) {
+    this.reader = reader;
+  }
+
+  @Override
+  public boolean authenticate(byte[] masterKey) {
+    return reader.authenticate(masterKey);
+  }
+
+  @Override
+  public boolean enableNotification(boolean enable) {
+    return reader.enableNotification(enable);
+  }
+
+  @Override
+  public boolean transmitApdu(byte[] apdu) {
+    return reader.transmitApdu(apdu);
+  }
+
+  @Override
+  public boolean transmitEscapeCommand(byte[] command) {
+    return reader.transmitEscapeCommand(command);
+  }
+
+  @Override
+  public boolean powerOnCard() {
+    return reader.powerOnCard();
+  }
+
+  @Override
+  public void setOnAuthenticationCompleteListener(OnAuthenticationCompleteListener listener) {
+    reader.setOnAuthenticationCompleteListener(listener == null ? null : (r, errorCode) -> listener.onAuthenticationComplete(this, errorCode));
+  }
+
+  @Override
+  public void setOnEnableNotificationCompleteListener(OnEnableNotificationCompleteListener listener) {
+    reader.setOnEnableNotificationCompleteListener(listener == null ? null : (r, result) -> listener.onEnableNotificationComplete(this, result));
+  }
+
+  @Override
+  public void setOnResponseApduAvailableListener(OnResponseApduAvailableListener listener) {
+    reader.setOnResponseApduAvailableListener(listener == null ? null : (r, response, errorCode) -> listener.onResponseApduAvailable(this, response, errorCode));
+  }
+
+  @Override
+  public void setOnEscapeResponseAvailableListener(OnEscapeResponseAvailableListener listener) {
+    reader.setOnEscapeResponseAvailableListener(listener == null ? null : (r, response, errorCode) -> listener.onEscapeResponseAvailable(this, response, errorCode));
+  }
+
+  @Override
+  public void setOnCardStatusChangeListener(OnCardStatusChangeListener listener) {
+    reader.setOnCardStatusChangeListener(listener == null ? null : (r, cardStatus) -> listener.onCardStatusChange(this, cardStatus));
+  }
+
+  @Override
+  public void setOnAtrAvailableListener(OnAtrAvailableListener listener) {
+    reader.setOnAtrAvailableListener(listener == null ? null : (r, atr, errorCode) -> listener.onAtrAvailable(this, atr, errorCode));
+  }
+
+  @Override
+  public void setOnBatteryLevelChangeListener(OnBatteryLevelChangeListener listener) {
+    reader.setOnBatteryLevelChangeListener(listener == null ? null : (r, batteryLevel) -> listener.onBatteryLevelChange(this, batteryLevel));
+  }
+
+  @Override
+  public void setOnBatteryLevelAvailableListener(OnBatteryLevelAvailableListener listener) {
+    reader.setOnBatteryLevelAvailableListener(listener == null ? null : (r, batteryLevel, status) -> listener.onBatteryLevelAvailable(this, batteryLevel, status));
+  }
+}
@@ -0,0 +1,252 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * A small script of APDU commands, which is run natively so each decision doesn't need a round trip to Dart.
+ * <p>
+ * Each step is a map with the following keys:
+ * <ul>
+ *   <li>command: the APDU to send (required).</li>
+ *   <li>expect: the accepted status words. Defaults to 9000.</li>
+ *   <li>next: the step to run when the status word is accepted. Defaults to the following step.</li>
+ *   <li>onMismatch: the step to run when the status word isn't accepted. If absent, the script stops and fails.</li>
+ *   <li>branches: a map from status words to steps, which takes precedence over next and onMismatch.</li>
+ *   <li>substitutions: a list of maps with the keys step, offset, length and position, each copying length bytes
+ *   from offset in the response data of an earlier step into the command at position.</li>
+ * </ul>
+ * A step index of -1, or past the last step, ends the script successfully.
+ */
+class ApduScript extends Transceive {
+  private static final int SW_SUCCESS = 0x9000;
+  // Guards against scripts that branch in circles.
+  private static final int MAX_EXECUTED_STEPS = 256;
+
+  private final Step[] steps;
+  // The response data of the latest run of each step, without the status word.
+  private final byte[][] responses;
+  private final List<Map<String, Object>> executed = new ArrayList<>();
+  private int current = 0;
+  private byte[] command;
+  private int failedStep = -1;
+  private String error;
+
+  private ApduScript(int id, Step[] steps, MethodChannel.Result result) {
+    super(id, result);
+    this.steps = steps;
+    this.responses = new byte[steps.length][];
+    this.command = buildCommand();
+  }
+
+  /**
+   * Parses a script from the method call's arguments.
+   *
+   * @throws IllegalArgumentException if the script is malformed.
+   */
+  static ApduScript parse(int id, List<Map<String, Object>> arguments, MethodChannel.Result result) {
+    if (arguments == null || arguments.isEmpty()) {
+      throw new IllegalArgumentException("The script must contain at least one step");
+    }
+
+    final Step[] steps = new Step[arguments.size()];
+    for (int i = 0; i < steps.length; i++) {
+      steps[i] = Step.parse(i, arguments.get(i), steps.length);
+    }
+
+    return new ApduScript(id, steps, result);
+  }
+
+  @Override
+  byte[] command() {
+    return command;
+  }
+
+  @Override
+  boolean onResponse(byte[] response) {
+    final Step step = steps[current];
+    final int sw = Utils.statusWord(response);
+    final byte[] data = Utils.responseData(response);
+    responses[current] = data;
+
+    final Map<String, Object> stepResult = new HashMap<>();
+    stepResult.put("step", current);
+    stepResult.put("sw", sw);
+    stepResult.put("data", data);
+    executed.add(stepResult);
+
+    int next;
+    if (step.branches.containsKey(sw)) {
+      next = step.branches.get(sw);
+    } else if (step.accepts(sw)) {
+      next = step.next;
+    } else if (step.onMismatch != null) {
+      next = step.onMismatch;
+    } else {
+      return fail(current, "Unexpected status word " + Integer.toHexString(sw).toUpperCase());
+    }
+
+    if (next < 0 || next >= steps.length) return false;
+    if (executed.size() >= MAX_EXECUTED_STEPS) {
+      return fail(current, "The script ran more than " + MAX_EXECUTED_STEPS + " steps");
+    }
+
+    current = next;
+    command = buildCommand();
+    return command != null;
+  }
+
+  @Override
+  Object getResult() {
+    final Map<String, Object> result = new HashMap<>();
+    result.put("success", failedStep == -1);
+    result.put("failedStep", failedStep);
+    result.put("steps", executed);
+    if (error != null) result.put("error", error);
+    return result;
+  }
+
+  @Override
+  void reset() {
+    executed.clear();
+    for (int i = 0; i < responses.length; i++) responses[i] = null;
+    current = 0;
+    failedStep = -1;
+    error = null;
+    command = buildCommand();
+  }
+
+  private boolean fail(int step, String message) {
+    failedStep = step;
+    error = message;
+    return false;
+  }
+
+  /**
+   * Builds the current step's command, with the bytes of earlier responses substituted in.
+   *
+   * @return the command, or null if a substitution refers to a response that isn't there.
+   */
+  private byte[] buildCommand() {
+    final Step step = steps[current];
+    if (step.substitutions.length == 0) return step.command;
+
+    final byte[] command = step.command.clone();
+    for (Substitution substitution : step.substitutions) {
+      final byte[] source = responses[substitution.step];
+      if (source == null || substitution.offset + substitution.length > source.length) {
+        fail(current, "Step " + substitution.step + " has no response data at " + substitution.offset + ".." + (substitution.offset + substitution.length));
+        return null;
+      }
+
+      System.arraycopy(source, substitution.offset, command, substitution.position, substitution.length);
+    }
+
+    return command;
+  }
+
+  /**
+   * @return true if the script has stopped with a failure, e.g. because its first command couldn't be built.
+   */
+  boolean hasFailed() {
+    return failedStep != -1;
+  }
+
+  private static class Step {
+    final byte[] command;
+    final int[] expect;
+    final int next;
+    final Integer onMismatch;
+    final Map<Integer, Integer> branches = new HashMap<>();
+    final Substitution[] substitutions;
+
+    Step(byte[] command, int[] expect, int next, Integer onMismatch, Substitution[] substitutions) {
+      this.command = command;
+      this.expect = expect;
+      this.next = next;
+      this.onMismatch = onMismatch;
+      this.substitutions = substitutions;
+    }
+
+    boolean accepts(int sw) {
+      for (int expected : expect) {
+        if (expected == sw) return true;
+      }
+
+      return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Step parse(int index, Map<String, Object> arguments, int stepCount) {
+      final Object command = arguments.get("command");
+      if (!(command instanceof byte[])) {
+        throw new IllegalArgumentException("Step " + index + " has no command");
+      }
+
+      int[] expect = {SW_SUCCESS};
+      final List<Number> expectArgument = (List<Number>) arguments.get("expect");
+      if (expectArgument != null) {
+        expect = new int[expectArgument.size()];
+        for (int i = 0; i < expect.length; i++) expect[i] = expectArgument.get(i).intValue();
+      }
+
+      final Number next = (Number) arguments.get("next");
+      final Number onMismatch = (Number) arguments.get("onMismatch");
+
+      Substitution[] substitutions = new Substitution[0];
+      final List<Map<String, Number>> substitutionArguments = (List<Map<String, Number>>) arguments.get("substitutions");
+      if (substitutionArguments != null) {
+        substitutions = new Substitution[substitutionArguments.size()];
+        for (int i = 0; i < substitutions.length; i++) {
+          substitutions[i] = Substitution.parse(index, substitutionArguments.get(i), (byte[]) command, stepCount);
+        }
+      }
+
+      final Step step = new Step((byte[]) command, expect, next == null ? index + 1 : next.intValue(), onMismatch == null ? null : onMismatch.intValue(), substitutions);
+
+      final Map<Number, Number> branches = (Map<Number, Number>) arguments.get("branches");
+      if (branches != null) {
+        for (Map.Entry<Number, Number> branch : branches.entrySet()) {
+          step.branches.put(branch.getKey().intValue(), branch.getValue().intValue());
+        }
+      }
+
+      return step;
+    }
+  }
+
+  private static class Substitution {
+    final int step;
+    final int offset;
+    final int length;
+    final int position;
+
+    Substitution(int step, int offset, int length, int position) {
+      this.step = step;
+      this.offset = offset;
+      this.length = length;
+      this.position = position;
+    }
+
+    static Substitution parse(int index, Map<String, Number> arguments, byte[] command, int stepCount) {
+      final Number step = arguments.get("step");
+      final Number offset = arguments.get("offset");
+      final Number length = arguments.get("length");
+      final Number position = arguments.get("position");
+      if (step == null || offset == null || length == null || position == null) {
+        throw new IllegalArgumentException("A substitution in step " + index + " is missing step, offset, length or position");
+      }
+
+      if (step.intValue() < 0 || step.intValue() >= stepCount || offset.intValue() < 0 || length.intValue() < 0
+          || position.intValue() < 0 || position.intValue() + length.intValue() > command.length) {
+        throw new IllegalArgumentException("A substitution in step " + index + " is out of bounds");
+      }
+
+      return new Substitution(step.intValue(), offset.intValue(), length.intValue(), position.intValue());
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.io.ByteArrayOutputStream;
+
+import io.flutter.plugin.common.MethodChannel;
+
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_APDU_FAILED;
+
+/**
+ * Sends a fixed list of commands, and merges their responses without the status words. A command that doesn't answer
+ * 9000 stops the sequence, and fails the request with its status word.
+ * <p>
+ * A sequence that has only selected and read so far can be resumed after being preempted: the SELECTs it sent are sent
+ * again, without merging their responses, and it goes on from the command it stopped at.
+ */
+class ApduSequence extends Transceive {
+  private static final int SW_SUCCESS = 0x9000;
+  private static final byte INS_SELECT = (byte) 0xA4;
+  // SELECT, READ BINARY, READ RECORD, GET DATA and GET RESPONSE, which leave nothing behind on the card but what's
+  // selected.
+  private static final byte[] RESUMABLE_INS = {INS_SELECT, (byte) 0xB0, (byte) 0xB2, (byte) 0xCA, (byte) 0xC0};
+  private final byte[][] commands;
+  private final ByteArrayOutputStream response = new ByteArrayOutputStream();
+  private int next = 0;
+  // Whether a failed status word fails the request. The sends of the legacy API merge whatever the card answers.
+  boolean checkStatus = true;
+  private String error;
+  // The SELECTs that are sent again when the sequence resumes, and how many of them have been.
+  private int[] replay;
+  private int replayed;
+
+  ApduSequence(int id, byte[][] commands, MethodChannel.Result result) {
+    super(id, result);
+    this.commands = commands;
+  }
+
+  byte[][] getCommands() {
+    return commands;
+  }
+
+  /**
+   * @return the index of the command to send next.
+   */
+  int getNext() {
+    return next;
+  }
+
+  /**
+   * @return true while the SELECTs are sent again after resuming, whose responses aren't the sequence's own.
+   */
+  boolean isResuming() {
+    return replay != null && replayed < replay.length;
+  }
+
+  @Override
+  byte[] command() {
+    return isResuming() ? commands[replay[replayed]] : commands[next];
+  }
+
+  @Override
+  boolean onResponse(byte[] response) {
+    final int sw = Utils.statusWord(response);
+    if (isResuming()) {
+      if (checkStatus && sw != SW_SUCCESS) {
+        error = "Command " + replay[replayed] + " failed with " + Integer.toHexString(sw).toUpperCase() + " when it was sent again";
+        return false;
+      }
+
+      replayed++;
+      return true;
+    }
+
+    if (checkStatus && sw != SW_SUCCESS) {
+      error = "Command " + next + " failed with " + Integer.toHexString(sw).toUpperCase();
+      return false;
+    }
+
+    // The last two bytes are the status word.
+    this.response.write(response, 0, Math.max(response.length - 2, 0));
+    next++;
+    return next < commands.length;
+  }
+
+  @Override
+  Object getResult() {
+    return response.toByteArray();
+  }
+
+  @Override
+  void reset() {
+    response.reset();
+    next = 0;
+    error = null;
+    replay = null;
+    replayed = 0;
+  }
+
+  @Override
+  boolean canResume() {
+    for (int i = 0; i < next; i++) {
+      if (!isResumable(commands[i])) return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  void resume() {
+    int count = 0;
+    for (int i = 0; i < next; i++) {
+      if (commands[i].length > 1 && commands[i][1] == INS_SELECT) count++;
+    }
+
+    replay = new int[count];
+    replayed = 0;
+    for (int i = 0, j = 0; i < next; i++) {
+      if (commands[i].length > 1 && commands[i][1] == INS_SELECT) replay[j++] = i;
+    }
+  }
+
+  private static boolean isResumable(byte[] command) {
+    if (command.length < 2) return false;
+
+    for (byte ins : RESUMABLE_INS) {
+      if (command[1] == ins) return true;
+    }
+    return false;
+  }
+
+  @Override
+  void complete() {
+    if (error != null) {
+      fail(ERROR_APDU_FAILED, error);
+      return;
+    }
+
+    super.complete();
+  }
+}
@@ -0,0 +1,70 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+/**
+ * The operations and events of an ACR1255U-J1 reader that the plugin uses. It decouples the plugin from the ACS
+ * SDK's BluetoothReader, so the reader can be simulated without hardware.
+ * <p>
+ * Status, error and card status codes are the ones declared in com.acs.bluetooth.BluetoothReader.
+ */
+interface CardReader {
+  boolean authenticate(byte[] masterKey);
+
+  boolean enableNotification(boolean enable);
+
+  boolean transmitApdu(byte[] apdu);
+
+  boolean transmitEscapeCommand(byte[] command);
+
+  /**
+   * Powers on the card that's present, which reports its ATR to the OnAtrAvailableListener.
+   */
+  boolean powerOnCard();
+
+  void setOnAuthenticationCompleteListener(OnAuthenticationCompleteListener listener);
+
+  void setOnEnableNotificationCompleteListener(OnEnableNotificationCompleteListener listener);
+
+  void setOnResponseApduAvailableListener(OnResponseApduAvailableListener listener);
+
+  void setOnEscapeResponseAvailableListener(OnEscapeResponseAvailableListener listener);
+
+  void setOnCardStatusChangeListener(OnCardStatusChangeListener listener);
+
+  void setOnAtrAvailableListener(OnAtrAvailableListener listener);
+
+  void setOnBatteryLevelChangeListener(OnBatteryLevelChangeListener listener);
+
+  void setOnBatteryLevelAvailableListener(OnBatteryLevelAvailableListener listener);
+
+  interface OnAuthenticationCompleteListener {
+    void onAuthenticationComplete(CardReader reader, int errorCode);
+  }
+
+  interface OnEnableNotificationCompleteListener {
+    void onEnableNotificationComplete(CardReader reader, int result);
+  }
+
+  interface OnResponseApduAvailableListener {
+    void onResponseApduAvailable(CardReader reader, byte[] response, int errorCode);
+  }
+
+  interface OnEscapeResponseAvailableListener {
+    void onEscapeResponseAvailable(CardReader reader, byte[] response, int errorCode);
+  }
+
+  interface OnCardStatusChangeListener {
+    void onCardStatusChange(CardReader reader, int cardStatus);
+  }
+
+  interface OnAtrAvailableListener {
+    void onAtrAvailable(CardReader reader, byte[] atr, int errorCode);
+  }
+
+  interface OnBatteryLevelChangeListener {
+    void onBatteryLevelChange(CardReader reader, int batteryLevel);
+  }
+
+  interface OnBatteryLevelAvailableListener {
+    void onBatteryLevelAvailable(CardReader reader, int batteryLevel, int status);
+  }
+}
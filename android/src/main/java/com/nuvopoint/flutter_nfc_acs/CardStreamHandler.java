@@ -1,94 +1,477 @@
 package com.nuvopoint.flutter_nfc_acs;
 
 import android.os.Handler;
-import android.os.Looper;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
-import com.acs.bluetooth.Acr1255uj1Reader;
 import com.acs.bluetooth.BluetoothReader;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodChannel;
 
 import static android.content.ContentValues.TAG;
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_COMMAND_DROPPED;
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_DUPLICATE_REQUEST_ID;
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_QUEUE_FULL;
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_READER_DISPOSED;
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_READER_TIMEOUT;
 
 /**
  * A StreamHandler that emits the IDs of scanned cards.
+ * <p>
+ * The reader callbacks, the response merging and the command sequencing all run on a worker thread, which is the only
+ * thread that touches the request state. Only the finished values hop to the main thread, to reach the event sink or
+ * a method call's result.
+ * <p>
+ * Whether a card is present, and whether a command is outstanding, is tracked by a {@link ReaderSession}. Responses
+ * that arrive outside of an exchange with the current card are dropped, and an exchange interrupted by the card being
+ * removed starts over from its first command on the next card, with nothing carried over.
+ * <p>
+ * The sends of the legacy API and the transceive requests wait their turn in one bounded {@link CommandQueue}. Bulk
+ * requests make way for interactive ones, and for the card ID request on a tap, at APDU boundaries.
+ * <p>
+ * A watchdog guards every command sent to the card. If the reader doesn't answer a command within the command timeout,
+ * or a request isn't done within the sequence timeout, the request fails with {@code reader_timeout}, and the reader
+ * is reset, so the next tap starts from a clean state.
+ * <p>
+ * While someone listens to {@link #uidStreamHandler}, the handler is in tap mode, which is tuned for reading as many
+ * cards per minute as the reader allows: the card IDs are emitted as raw bytes on that stream, instead of as hex
+ * strings on the card stream, and nothing is logged on the way from the tap to the ID.
+ * <p>
+ * Each of the two streams can suppress the cards seen again within a short window, or annotate them with how often
+ * they were seen, see {@link RecentUids}.
+ * <p>
+ * Requests marked as cacheable are answered from a {@link ResponseCache} when the same card is tapped again, without
+ * touching the radio. Their card's ID is read first, as the cache key, even if it isn't emitted.
+ * <p>
+ * While someone listens to {@link #cardInfoStreamHandler}, each card is powered on when it's tapped, and its ID, its
+ * ATR and its type, see {@link CardTypes}, are emitted on that stream before anything else is sent to it.
  */
 class CardStreamHandler implements EventChannel.StreamHandler {
   private static final byte[] AUTO_POLLING_START = {(byte) 0xE0, 0x00, 0x00, 0x40, 0x01};
   private static final byte[] AUTO_POLLING_STOP = {(byte) 0xE0, 0x00, 0x00, 0x40, 0x00};
-  private static final String requestCardId = "FFCA000000";
-  private BluetoothReader reader;
-  private EventChannel.EventSink events;
-  private byte[] apduToSend;
-  private String apduResponse = "";
-  private byte[][] multipleApduToSend;
-  private int expectedApduResponseCount = 0;
-  private int cardStatus = -1;
-
-  void setReader(final BluetoothReader reader) {
-    if (reader instanceof Acr1255uj1Reader) {
-      this.reader = reader;
+  // GET DATA for the card's UID.
+  private static final byte[] REQUEST_CARD_ID = {(byte) 0xFF, (byte) 0xCA, 0x00, 0x00, 0x00};
+  // The legacy sends have no request ID, so they're never taken for duplicates.
+  private static final int NO_REQUEST_ID = -1;
+  static final long DEFAULT_COMMAND_TIMEOUT_MS = 2000;
+  static final long DEFAULT_SEQUENCE_TIMEOUT_MS = 10000;
+  // How often a bulk request makes way for the interactive lane, after which it runs to the end, so a steady stream of
+  // interactive requests can't keep it from finishing.
+  static final int MAX_PREEMPTIONS = 16;
+  private final HandlerThread thread = new HandlerThread("AcsCardReader", Process.THREAD_PRIORITY_FOREGROUND);
+  private final Handler worker;
+  private final ReaderSession session = new ReaderSession();
+  // Only touched on the worker thread, except the event sink, which is set from the main thread.
+  private CardReader reader;
+  private volatile EventChannel.EventSink events;
+  private final CommandQueue queue = new CommandQueue();
+  // The request at the head of the queue, while it's being sent.
+  private Transceive activeTransceive;
+  // Set while the card ID requested on a tap is outstanding.
+  private boolean requestingCardId = false;
+  private final ResponseChain responseChain = new ResponseChain();
+  // A timeout of 0 turns that deadline off.
+  private long commandTimeoutMs = DEFAULT_COMMAND_TIMEOUT_MS;
+  private long sequenceTimeoutMs = DEFAULT_SEQUENCE_TIMEOUT_MS;
+  // Run on the main thread after the watchdog reset the reader, e.g. to reconnect to it.
+  private Runnable onReaderReset;
+  private final Runnable watchdog = this::onDeadlineExpired;
+  // Set while in tap mode.
+  private volatile EventChannel.EventSink uidEvents;
+  private final TapMeter tapMeter = new TapMeter();
+  private long cardDetectedAt;
+  private final RecentUids recentUids = new RecentUids();
+  // What the card stream, and the stream of tap mode, do with repeats, see RecentUids.
+  private int cardRepeats = RecentUids.REPEATS_EMIT;
+  private int uidRepeats = RecentUids.REPEATS_EMIT;
+  // Whether the card ID that's requested is emitted, rather than only read as the key of the response cache.
+  private boolean emitCardId = false;
+  private final ResponseCache responseCache = new ResponseCache();
+  // The ID of the card that's present, once it's read, or null if it couldn't be.
+  private byte[] cardUid;
+  private boolean cardUidRead = false;
+  // The MIFARE keys loaded into the reader that's connected.
+  private final MifareSectorRead.KeySlots keySlots = new MifareSectorRead.KeySlots();
+  // Set while someone listens to the card info stream.
+  private volatile EventChannel.EventSink infoEvents;
+  // Set while the ATR requested on a tap is outstanding, and the ATR once it's in, or null if it couldn't be read.
+  private boolean requestingAtr = false;
+  private byte[] cardAtr;
+  // Whether the ATR of the card that's present was asked for, even if it couldn't be read.
+  private boolean cardAtrRead = false;
 
-      reader.setOnResponseApduAvailableListener((_r, response, errorCode) -> {
-        if (errorCode == BluetoothReader.ERROR_SUCCESS) {
-          new Handler(Looper.getMainLooper()).post(() -> {
-            if (events != null) {
-              final String responseStr = Utils.toHexString(Arrays.copyOf(response, response.length - 2)).trim();
-              this.apduResponse = this.apduResponse == "" ? responseStr : (this.apduResponse + " " + responseStr);
-              this.expectedApduResponseCount--;
-              Log.i(TAG, "Received response: " + responseStr + ". " + this.expectedApduResponseCount + " more to go");
-
-              if (this.expectedApduResponseCount <= 0) {
-                this.multipleApduToSend = null;
-                events.success(this.apduResponse);
-                this.apduResponse = "";
-                return;
-              }
+  /**
+   * Emits the IDs of the cards as raw bytes, and puts the handler in tap mode while it's listened to.
+   */
+  final EventChannel.StreamHandler uidStreamHandler = new EventChannel.StreamHandler() {
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+      uidEvents = events;
+      worker.post(tapMeter::reset);
+      startPolling();
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+      uidEvents = null;
+    }
+  };
 
-              final byte[] command = this.multipleApduToSend[this.multipleApduToSend.length - this.expectedApduResponseCount];
-              Log.i(TAG, "Sending next command: " + Utils.toHexString(command));
-              reader.transmitApdu(command);
-            }
-          });
-        } else {
-          this.expectedApduResponseCount = 0;
-          this.multipleApduToSend = null;
-          new Handler(Looper.getMainLooper()).post(() -> {
-            if (events != null) {
-              events.error("unknown_reader_error", String.valueOf(errorCode), null);
-            }
-          });
+  /**
+   * Emits a map of the ID, ATR and type of each card, and when it was detected, in elapsed realtime milliseconds.
+   */
+  final EventChannel.StreamHandler cardInfoStreamHandler = new EventChannel.StreamHandler() {
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+      infoEvents = events;
+      startPolling();
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+      infoEvents = null;
+    }
+  };
+
+  /**
+   * A send of the legacy API. Its result completes once it has a place in the queue, and its merged response, or an
+   * error, is emitted on the card stream.
+   */
+  private final class StreamSend extends ApduSequence {
+    private final boolean binary;
+    // A single APDU waits for the next tap, while a merged send starts on the card that's already present.
+    boolean waitingForTap;
+    private boolean admitted = false;
+
+    StreamSend(byte[][] commands, boolean binary, boolean waitingForTap, MethodChannel.Result result) {
+      super(NO_REQUEST_ID, commands, result);
+      checkStatus = false;
+      this.binary = binary;
+      this.waitingForTap = waitingForTap;
+    }
+
+    @Override
+    void onAdmitted() {
+      admitted = true;
+      MainThreadDispatcher.post(() -> result.success(null));
+    }
+
+    @Override
+    void complete() {
+      final byte[] merged = (byte[]) getResult();
+      emit(merged, merged.length, binary);
+    }
+
+    @Override
+    void fail(String code, String message) {
+      if (!admitted) {
+        super.fail(code, message);
+        return;
+      }
+
+      MainThreadDispatcher.post(() -> {
+        if (events != null) {
+          events.error(code, message, null);
         }
       });
+    }
+  }
 
-      reader.setOnCardStatusChangeListener((bluetoothReader, cardStatusCode) -> {
-        this.cardStatus = cardStatusCode;
-        Log.i(TAG, "Card status: " + getCardStatusString(cardStatusCode));
-        if (cardStatusCode != BluetoothReader.CARD_STATUS_PRESENT) return;
+  CardStreamHandler() {
+    thread.start();
+    worker = new Handler(thread.getLooper());
+  }
 
-        if (multipleApduToSend != null) {
-          this.startMultipleApduSend(bluetoothReader);
-          return;
-        }
+  void setReader(final CardReader reader) {
+    worker.post(() -> {
+      this.reader = reader;
+      keySlots.clear();
+    });
 
-        if (apduToSend == null) {
-          Log.i(TAG, "Requesting card ID");
-          bluetoothReader.transmitApdu(Utils.hexStringToByteArray(requestCardId));
-          return;
-        }
+    reader.setOnResponseApduAvailableListener((_r, response, errorCode) -> {
+      if (errorCode == BluetoothReader.ERROR_SUCCESS) {
+        worker.post(() -> {
+          if (!session.onResponse()) {
+            Log.w(TAG, "Dropped a response that didn't belong to an exchange with the current card");
+            return;
+          }
+          worker.removeCallbacks(watchdog);
 
-        this.expectedApduResponseCount = 1;
-        Log.i(TAG, "Sending APDU command");
-        bluetoothReader.transmitApdu(apduToSend);
-        apduToSend = null;
-      });
+          final byte[] followUp = responseChain.onResponse(response);
+          if (followUp != null) {
+            Log.i(TAG, "Fetching the rest of the response");
+            send(reader, followUp);
+            return;
+          }
+
+          onResponse(reader, responseChain.getResponse());
+        });
+      } else {
+        worker.post(() -> {
+          if (!session.onResponse()) {
+            Log.w(TAG, "Dropped an error that didn't belong to an exchange with the current card: " + errorCode);
+            return;
+          }
+          worker.removeCallbacks(watchdog);
+
+          responseChain.start(null);
+          if (activeTransceive != null) {
+            final Transceive failed = activeTransceive;
+            finishTransceive(reader);
+            failed.fail("unknown_reader_error", String.valueOf(errorCode));
+            return;
+          }
+
+          requestingCardId = false;
+          cardUidRead = true;
+          if (emitCardId) {
+            MainThreadDispatcher.post(() -> {
+              if (events != null) {
+                events.error("unknown_reader_error", String.valueOf(errorCode), null);
+              }
+            });
+          }
+          sendNext(reader);
+        });
+      }
+    });
+
+    reader.setOnAtrAvailableListener((_r, atr, errorCode) -> worker.post(() -> {
+      if (!requestingAtr || !session.onResponse()) {
+        Log.w(TAG, "Dropped an ATR that didn't belong to the current card");
+        return;
+      }
+      worker.removeCallbacks(watchdog);
+
+      requestingAtr = false;
+      cardAtrRead = true;
+      cardAtr = errorCode == BluetoothReader.ERROR_SUCCESS ? atr : null;
+      // An NDEF read asks for the ATR after the card ID is in, when there's no card info stream.
+      if (cardUidRead) {
+        sendNext(reader);
+      } else {
+        startTap(reader);
+      }
+    }));
+
+    reader.setOnCardStatusChangeListener((cardReader, cardStatusCode) -> worker.post(() -> onCardStatusChange(cardReader, cardStatusCode)));
+  }
+
+  private void onCardStatusChange(CardReader cardReader, int cardStatusCode) {
+    final boolean tapMode = uidEvents != null;
+    if (!tapMode) Log.i(TAG, "Card status: " + getCardStatusString(cardStatusCode));
+    if (cardStatusCode == BluetoothReader.CARD_STATUS_POWERED) return;
+    // The card moved, so whatever was outstanding is abandoned rather than hung.
+    worker.removeCallbacks(watchdog);
+
+    if (cardStatusCode != BluetoothReader.CARD_STATUS_PRESENT) {
+      // The reader keeps polling, so the session is ready for the next card right away.
+      if (session.onCardAbsent() != ReaderSession.IDLE) responseChain.start(null);
+      requestingCardId = false;
+      requestingAtr = false;
+      cardUid = null;
+      cardUidRead = false;
+      return;
+    }
+
+    cardDetectedAt = SystemClock.elapsedRealtime();
+    session.onCardPresent();
+    responseChain.start(null);
+    requestingCardId = false;
+    requestingAtr = false;
+    cardUid = null;
+    cardUidRead = false;
+    cardAtr = null;
+    cardAtrRead = false;
+
+    // The card was removed in the middle of a request, or of a preempted bulk request, so they start over.
+    activeTransceive = null;
+    queue.resetStarted();
+
+    final Transceive head = queue.peek();
+    if (head instanceof StreamSend) {
+      ((StreamSend) head).waitingForTap = false;
+    }
+
+    if (infoEvents != null) {
+      requestAtr(cardReader);
+      return;
+    }
+
+    startTap(cardReader);
+  }
+
+  /**
+   * Powers on the card that's present, which reports its ATR.
+   */
+  private void requestAtr(CardReader reader) {
+    final long generation = session.beginTransmit();
+    if (generation < 0) return;
+
+    requestingAtr = true;
+    reader.powerOnCard();
+    if (session.sent(generation)) armWatchdog();
+  }
+
+  /**
+   * Starts the exchanges with a card that was just tapped: the request at the head of the queue, or the card ID.
+   */
+  private void startTap(CardReader reader) {
+    final Transceive head = queue.peek();
+    // The card ID goes ahead of bulk requests, which are sent once it's in. The card info needs it first, either way.
+    final boolean headFirst = head != null && head.lane != CommandQueue.LANE_BULK;
+    if (headFirst && infoEvents == null && sendNext(reader)) return;
+
+    if (uidEvents == null) Log.i(TAG, "Requesting card ID");
+    requestCardId(reader, !headFirst || infoEvents == null);
+  }
+
+  /**
+   * Sends GET DATA for the ID of the card that's present.
+   *
+   * @param emit whether the ID is emitted, or only kept as the key of the response cache.
+   */
+  private void requestCardId(CardReader reader, boolean emit) {
+    requestingCardId = true;
+    emitCardId = emit;
+    transmit(reader, REQUEST_CARD_ID);
+  }
+
+  /**
+   * Handles a complete response, after any GET RESPONSE follow-ups.
+   */
+  private void onResponse(CardReader reader, byte[] response) {
+    if (activeTransceive != null) {
+      onTransceiveResponse(reader, response);
+      return;
+    }
+
+    if (requestingCardId) {
+      requestingCardId = false;
+      cardUidRead = true;
+      if (Utils.statusWord(response) == 0x9000) cardUid = Utils.responseData(response);
+      if (emitCardId) onCardId(response);
+      if (infoEvents != null) emitCardInfo();
+      sendNext(reader);
+    }
+  }
+
+  /**
+   * Emits the ID of the card on the card stream, or on the stream of tap mode, unless it's a repeat to suppress.
+   */
+  private void onCardId(byte[] response) {
+    // The last two bytes are the status word.
+    final int length = Math.max(response.length - 2, 0);
+    final boolean tapMode = uidEvents != null;
+    final int policy = tapMode ? uidRepeats : cardRepeats;
+
+    final int repeat = policy == RecentUids.REPEATS_EMIT ? 0 : recentUids.onSeen(response, length, SystemClock.elapsedRealtime());
+    if (repeat > 0 && policy == RecentUids.REPEATS_SUPPRESS) return;
+
+    final Object uid = tapMode ? Arrays.copyOf(response, length) : Utils.appendHex(new StringBuilder(), response, 0, length, true).toString();
+    final Object event;
+    if (policy == RecentUids.REPEATS_ANNOTATE) {
+      final HashMap<String, Object> annotated = new HashMap<>();
+      annotated.put("uid", uid);
+      annotated.put("repeat", repeat);
+      event = annotated;
     } else {
-      Log.i(TAG, "Card stream not supported for this device");
+      event = uid;
+    }
+
+    if (tapMode) {
+      emitUid(event);
+    } else {
+      post(event);
+    }
+  }
+
+  /**
+   * Sends a command, and starts a new response chain for it.
+   */
+  private void transmit(CardReader reader, byte[] command) {
+    // A LOAD KEY sent as a raw command overwrites a key slot without the MIFARE reads knowing which.
+    if (MifareSectorRead.isLoadKey(command) && !(activeTransceive instanceof MifareSectorRead)) keySlots.clear();
+    responseChain.start(command);
+    send(reader, command);
+  }
+
+  /**
+   * Hands a command to the reader, if the current card is free to take it.
+   */
+  private void send(CardReader reader, byte[] command) {
+    final long generation = session.beginTransmit();
+    if (generation < 0) {
+      Log.w(TAG, "The card is gone, or busy, so the command waits for the next tap");
+      return;
+    }
+
+    reader.transmitApdu(command);
+    if (session.sent(generation)) armWatchdog();
+  }
+
+  /**
+   * Schedules the watchdog for the command that was just sent, at the command deadline, or the active request's
+   * sequence deadline if that's sooner. The sequence deadline runs from the start of the request's current attempt, so
+   * a request restarted on a new card gets the whole of it, while one that was preempted keeps counting.
+   */
+  private void armWatchdog() {
+    worker.removeCallbacks(watchdog);
+
+    long delay = commandTimeoutMs > 0 ? commandTimeoutMs : Long.MAX_VALUE;
+    if (activeTransceive != null && sequenceTimeoutMs > 0) {
+      final long remaining = activeTransceive.attemptStartedAt + sequenceTimeoutMs - SystemClock.elapsedRealtime();
+      delay = Math.min(delay, Math.max(remaining, 0));
+    }
+
+    if (delay != Long.MAX_VALUE) worker.postDelayed(watchdog, delay);
+  }
+
+  /**
+   * Fails whatever is waiting for the reader, and resets the reader.
+   */
+  private void onDeadlineExpired() {
+    final int state = session.getState();
+    if (state != ReaderSession.TRANSMITTING && state != ReaderSession.AWAITING_RESPONSE) return;
+
+    Log.w(TAG, "The reader didn't answer in time, resetting it");
+    // Ends the session, so a response that arrives after all is dropped.
+    session.onCardAbsent();
+    responseChain.start(null);
+
+    final String message = "The reader didn't answer in time";
+    requestingAtr = false;
+    if (activeTransceive != null) {
+      final Transceive failed = activeTransceive;
+      queue.remove(failed);
+      activeTransceive = null;
+      failed.fail(ERROR_READER_TIMEOUT, message);
+    } else if (requestingCardId) {
+      requestingCardId = false;
+      if (emitCardId) {
+        MainThreadDispatcher.post(() -> {
+          if (events != null) {
+            events.error(ERROR_READER_TIMEOUT, message, null);
+          }
+        });
+      }
+    }
+
+    // Re-arming the polling makes the reader report the card again, if it's still there.
+    if (reader != null) {
+      reader.transmitEscapeCommand(AUTO_POLLING_STOP);
+      reader.transmitEscapeCommand(AUTO_POLLING_START);
+    }
+
+    if (onReaderReset != null) {
+      MainThreadDispatcher.post(onReaderReset);
     }
   }
 
@@ -107,9 +490,11 @@ class CardStreamHandler implements EventChannel.StreamHandler {
   }
 
   void startPolling() {
-    if (reader != null) {
-      reader.transmitEscapeCommand(AUTO_POLLING_START);
-    }
+    worker.post(() -> {
+      if (reader != null) {
+        reader.transmitEscapeCommand(AUTO_POLLING_START);
+      }
+    });
   }
 
   @Override
@@ -118,36 +503,392 @@ class CardStreamHandler implements EventChannel.StreamHandler {
     startPolling();
   }
 
+  /**
+   * Only stops the emissions on the card stream. The queued requests and the reader's listeners are still needed by the
+   * transceive requests and the other streams, and are torn down when the connection is closed.
+   */
   @Override
   public void onCancel(Object arguments) {
-    dispose();
+    events = null;
   }
 
-  void sendApdu(byte[] data) {
-    this.apduToSend = data;
+  /**
+   * Emits response data, either as raw bytes or as the spaced hex string of the legacy API. The string is built here,
+   * so the main thread only hands it over.
+   */
+  private void emit(byte[] data, int length, boolean binary) {
+    if (binary) {
+      post(length == data.length ? data : Arrays.copyOf(data, length));
+    } else {
+      post(Utils.appendHex(new StringBuilder(), data, 0, length, true).toString());
+    }
   }
 
-  private void startMultipleApduSend(BluetoothReader reader) {
-    Log.i(TAG, "Sending multiple APDU commands");
-    this.apduResponse = "";
-    Log.i(TAG, "Sending command: " + Utils.toHexString(this.multipleApduToSend[0]));
-    reader.transmitApdu(this.multipleApduToSend[0]);
+  private void post(Object value) {
+    MainThreadDispatcher.post(() -> {
+      if (events != null) {
+        events.success(value);
+      }
+    });
   }
 
-  void sendMultipleApduWithMergedResult(byte[][] data) {
-    this.apduToSend = null;
-    this.multipleApduToSend = data;
-    this.expectedApduResponseCount = data.length;
+  private void emitCardInfo() {
+    final HashMap<String, Object> info = new HashMap<>();
+    info.put("uid", cardUid);
+    info.put("atr", cardAtr);
+    info.put("type", CardTypes.classify(cardAtr));
+    info.put("detectedAtMs", cardDetectedAt);
 
-    if (this.cardStatus == BluetoothReader.CARD_STATUS_PRESENT) this.startMultipleApduSend(this.reader);
+    MainThreadDispatcher.post(() -> {
+      final EventChannel.EventSink events = infoEvents;
+      if (events != null) {
+        events.success(info);
+      }
+    });
   }
 
-  void dispose() {
-    if (reader != null) {
-      reader.transmitEscapeCommand(AUTO_POLLING_STOP);
-      reader.setOnResponseApduAvailableListener(null);
-      reader.setOnCardStatusChangeListener(null);
+  private void emitUid(Object uid) {
+    tapMeter.onTap(cardDetectedAt, SystemClock.elapsedRealtime());
+    MainThreadDispatcher.post(() -> {
+      final EventChannel.EventSink events = uidEvents;
+      if (events != null) {
+        events.success(uid);
+      }
+    });
+  }
+
+  /**
+   * Sets what the card stream, and the stream of tap mode, do with a card seen again within the window, and the size
+   * and window of the cache of recent cards.
+   */
+  void configureRepeats(int cardRepeats, int uidRepeats, int capacity, long ttlMs, MethodChannel.Result result, String errorCode) {
+    worker.post(() -> {
+      try {
+        recentUids.configure(capacity, ttlMs);
+      } catch (IllegalArgumentException e) {
+        MainThreadDispatcher.post(() -> result.error(errorCode, e.getMessage(), null));
+        return;
+      }
+
+      this.cardRepeats = cardRepeats;
+      this.uidRepeats = uidRepeats;
+      MainThreadDispatcher.post(() -> result.success(null));
+    });
+  }
+
+  /**
+   * Sets the memory cap of the response cache, where 0 turns it off and forgets the responses, and how long a response
+   * is served from it.
+   */
+  void configureResponseCache(long maxBytes, long ttlMs, MethodChannel.Result result, String errorCode) {
+    worker.post(() -> {
+      try {
+        responseCache.configure(maxBytes, ttlMs);
+      } catch (IllegalArgumentException e) {
+        MainThreadDispatcher.post(() -> result.error(errorCode, e.getMessage(), null));
+        return;
+      }
+
+      MainThreadDispatcher.post(() -> result.success(null));
+    });
+  }
+
+  /**
+   * Completes the result with the size of the response cache, and how many requests it answered.
+   */
+  void getResponseCacheStats(MethodChannel.Result result) {
+    worker.post(() -> {
+      final Map<String, Object> stats = responseCache.getStats();
+      MainThreadDispatcher.post(() -> result.success(stats));
+    });
+  }
+
+  /**
+   * Completes the result with the number of cards read in tap mode, in total and within the last minute, and the
+   * average time from a card being detected to its ID being emitted.
+   */
+  void getTapStats(MethodChannel.Result result) {
+    worker.post(() -> {
+      final Map<String, Object> stats = tapMeter.getStats(SystemClock.elapsedRealtime());
+      MainThreadDispatcher.post(() -> result.success(stats));
+    });
+  }
+
+  /**
+   * Queues a command for the next tap, in place of the card ID request. The result completes once it's queued.
+   */
+  void sendApdu(byte[] data, boolean binary, MethodChannel.Result result) {
+    worker.post(() -> enqueue(new StreamSend(new byte[][]{data}, binary, true, result)));
+  }
+
+  /**
+   * Queues commands whose responses are merged, and sent on the card stream. They start on the card that's present,
+   * if any. The result completes once they're queued.
+   */
+  void sendMultipleApduWithMergedResult(byte[][] data, boolean binary, MethodChannel.Result result) {
+    worker.post(() -> enqueue(new StreamSend(data, binary, false, result)));
+  }
+
+  /**
+   * Queues the commands of a transceive request. The merged response, or an error, completes the request's own result.
+   */
+  void transceive(int id, byte[][] commands, int lane, boolean cacheable, MethodChannel.Result result) {
+    final ApduSequence sequence = new ApduSequence(id, commands, result);
+    sequence.lane = lane;
+    sequence.cacheable = cacheable;
+    worker.post(() -> enqueue(sequence));
+  }
+
+  /**
+   * Queues a script, which completes its result with a structured result once it stops.
+   */
+  void runScript(ApduScript script) {
+    worker.post(() -> enqueue(script));
+  }
+
+  /**
+   * Queues a read of MIFARE Classic sectors, which completes its result with the blocks that were read.
+   */
+  void readMifareSectors(MifareSectorRead read) {
+    worker.post(() -> {
+      read.keySlots = keySlots;
+      enqueue(read);
+    });
+  }
+
+  /**
+   * Queues a read of the NDEF message of a Type 2 tag, which completes its result with the message.
+   */
+  void readNdef(NdefTagRead read) {
+    worker.post(() -> enqueue(read));
+  }
+
+  /**
+   * Changes the capacity and overflow policy of the queue, see {@link CommandQueue#configure(int, int)}.
+   */
+  void configureQueue(int capacity, int overflow, MethodChannel.Result result, String errorCode) {
+    worker.post(() -> {
+      try {
+        queue.configure(capacity, overflow);
+      } catch (IllegalArgumentException e) {
+        MainThreadDispatcher.post(() -> result.error(errorCode, e.getMessage(), null));
+        return;
+      }
+
+      MainThreadDispatcher.post(() -> result.success(null));
+    });
+  }
+
+  /**
+   * Sets the deadlines of the watchdog, where 0 turns a deadline off, and what's run on the main thread after the
+   * watchdog reset the reader, or null for nothing.
+   */
+  void configureTimeouts(long commandTimeoutMs, long sequenceTimeoutMs, Runnable onReaderReset) {
+    worker.post(() -> {
+      this.commandTimeoutMs = commandTimeoutMs;
+      this.sequenceTimeoutMs = sequenceTimeoutMs;
+      this.onReaderReset = onReaderReset;
+    });
+  }
+
+  /**
+   * Completes the result with the depth of the queue, and how long the requests waited in it.
+   */
+  void getQueueStats(MethodChannel.Result result) {
+    worker.post(() -> {
+      final Map<String, Object> stats = queue.getStats();
+      MainThreadDispatcher.post(() -> result.success(stats));
+    });
+  }
+
+  private void enqueue(Transceive transceive) {
+    if (transceive.id != NO_REQUEST_ID && queue.contains(transceive.id)) {
+      transceive.fail(ERROR_DUPLICATE_REQUEST_ID, "A request with the id " + transceive.id + " is already in flight");
+      return;
+    }
+
+    final Transceive displaced = queue.offer(transceive);
+    if (displaced == transceive) {
+      transceive.fail(ERROR_QUEUE_FULL, "The command queue is full");
+      return;
+    } else if (displaced != null) {
+      Log.w(TAG, "Dropped the oldest request to make room in the command queue");
+      displaced.fail(ERROR_COMMAND_DROPPED, "The request was dropped from the full command queue");
+    }
+
+    sendNext(this.reader);
+  }
+
+  /**
+   * Sends the first command of the request at the head of the queue, unless the card is gone or busy. The cacheable
+   * requests that the response cache can answer are completed on the way.
+   *
+   * @return true if a request, or the card ID it's cached by, was started.
+   */
+  private boolean sendNext(CardReader reader) {
+    if (reader == null || activeTransceive != null || requestingCardId || requestingAtr) return false;
+    if (session.getState() != ReaderSession.CARD_PRESENT) return false;
+
+    Transceive head = nextToSend();
+    while (head != null && head.cacheable && responseCache.isEnabled()) {
+      if (!cardUidRead) {
+        requestCardId(reader, false);
+        return true;
+      }
+
+      if (!completeFromCache(head)) break;
+      head = nextToSend();
+    }
+    if (head == null) return false;
+
+    if (head instanceof NdefTagRead && ((NdefTagRead) head).needsCardType()) {
+      if (!cardAtrRead) {
+        requestAtr(reader);
+        return true;
+      }
+
+      ((NdefTagRead) head).cardType = CardTypes.classify(cardAtr);
+    }
+
+    // A request that was preempted picks up where it left off, unless its sequence deadline passed while it waited.
+    if (head.preempted) {
+      head.preempted = false;
+      if (sequenceTimeoutMs > 0 && SystemClock.elapsedRealtime() - head.attemptStartedAt >= sequenceTimeoutMs) {
+        queue.remove(head);
+        head.fail(ERROR_READER_TIMEOUT, "The request ran out of time while it was preempted");
+        return sendNext(reader);
+      }
+
+      head.resume();
     }
+
+    activeTransceive = head;
+    queue.onStarted(head);
+    Log.i(TAG, "Sending request " + head.id);
+    transmit(reader, head.command());
+    return true;
+  }
+
+  /**
+   * @return the request at the head of the queue, except that a send waiting for the next tap lets the bulk lane go
+   *     ahead, or null if there's nothing to send.
+   */
+  private Transceive nextToSend() {
+    final Transceive head = queue.peek();
+    if (!(head instanceof StreamSend) || !((StreamSend) head).waitingForTap) return head;
+
+    return head.lane == CommandQueue.LANE_BULK ? null : queue.peek(CommandQueue.LANE_BULK);
+  }
+
+  /**
+   * Completes a request with the cached responses to its commands, if they're all cached for the card that's present.
+   *
+   * @return true if it was completed.
+   */
+  private boolean completeFromCache(Transceive transceive) {
+    if (cardUid == null || !(transceive instanceof ApduSequence)) return false;
+
+    final byte[][] responses = responseCache.getAll(cardUid, ((ApduSequence) transceive).getCommands(), SystemClock.elapsedRealtime());
+    if (responses == null) return false;
+
+    queue.onStarted(transceive);
+    // A preempted request starts over, from the cached responses.
+    transceive.preempted = false;
+    transceive.reset();
+    for (byte[] response : responses) {
+      if (!transceive.onResponse(response)) break;
+    }
+
+    queue.remove(transceive);
+    transceive.complete();
+    return true;
+  }
+
+  private void onTransceiveResponse(CardReader reader, byte[] response) {
+    final Transceive transceive = activeTransceive;
+    if (transceive.cacheable && cardUid != null && transceive instanceof ApduSequence && !((ApduSequence) transceive).isResuming()) {
+      final ApduSequence sequence = (ApduSequence) transceive;
+      responseCache.put(cardUid, sequence.getCommands(), sequence.getNext(), response, SystemClock.elapsedRealtime());
+    }
+
+    if (transceive.onResponse(response)) {
+      if (nextToSend() != transceive && transceive.canResume() && transceive.preemptions < MAX_PREEMPTIONS) {
+        // A bulk request makes way at the APDU boundary, and resumes once the interactive lane is empty.
+        activeTransceive = null;
+        transceive.preempted = true;
+        if (sendNext(reader)) {
+          transceive.preemptions++;
+          Log.i(TAG, "Preempted request " + transceive.id);
+          return;
+        }
+        transceive.preempted = false;
+        activeTransceive = transceive;
+      }
+
+      transmit(reader, transceive.command());
+      return;
+    }
+
+    finishTransceive(reader);
+    transceive.complete();
+  }
+
+  /**
+   * Removes the active request from the queue, and moves on to whatever is waiting.
+   */
+  private void finishTransceive(CardReader reader) {
+    queue.remove(activeTransceive);
+    activeTransceive = null;
+
+    sendNext(reader);
+  }
+
+  /**
+   * Fails the queued requests, and emits the error on the card stream, when the reader can't go on.
+   */
+  void onReaderFailed(String code, String message) {
+    worker.post(() -> {
+      failQueued(code, message);
+      session.onCardAbsent();
+      responseChain.start(null);
+      requestingAtr = false;
+
+      MainThreadDispatcher.post(() -> {
+        if (events != null) {
+          events.error(code, message, null);
+        }
+      });
+    });
+  }
+
+  private void failQueued(String code, String message) {
+    for (Transceive transceive : queue.clear()) {
+      transceive.fail(code, message);
+    }
+    activeTransceive = null;
+    requestingCardId = false;
+    worker.removeCallbacks(watchdog);
+  }
+
+  void dispose() {
     events = null;
+    worker.post(() -> {
+      failQueued(ERROR_READER_DISPOSED, "The reader was disposed before a response was received");
+
+      if (reader != null) {
+        reader.transmitEscapeCommand(AUTO_POLLING_STOP);
+        reader.setOnResponseApduAvailableListener(null);
+        reader.setOnCardStatusChangeListener(null);
+        reader.setOnAtrAvailableListener(null);
+      }
+    });
+  }
+
+  /**
+   * Disposes the handler, and stops the worker thread once the work already posted to it has run.
+   */
+  void close() {
+    dispose();
+    thread.quitSafely();
   }
 }
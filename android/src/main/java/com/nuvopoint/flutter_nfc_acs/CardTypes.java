@@ -0,0 +1,77 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+/**
+ * Tells the type of a contactless card from the ATR the reader builds for it, so an app doesn't need to probe the card
+ * with APDUs.
+ * <p>
+ * A storage card, e.g. a MIFARE Classic, gets the PC/SC Part 3 ATR {@code 3B 8F 80 01 80 4F 0C A0 00 00 03 06 SS
+ * C0 C1 00 00 00 00 TCK}, where C0 C1 is the card name, which is looked up in a table. An ISO 14443-4 card gets
+ * {@code 3B 8n 80 01} followed by the historical bytes of its ATS, which only tell a DESFire apart.
+ */
+final class CardTypes {
+  static final String UNKNOWN = "unknown";
+  static final String ISO_14443_4 = "iso14443Part4";
+  static final String DESFIRE = "desfire";
+  static final String MIFARE_ULTRALIGHT = "mifareUltralight";
+  static final String MIFARE_ULTRALIGHT_C = "mifareUltralightC";
+
+  // The card names of the PC/SC Part 3 supplement, and the types they map to.
+  private static final int[] NAMES = {0x0001, 0x0002, 0x0003, 0x0026, 0x0036, 0x0037, 0x0038, 0x0039, 0x003A, 0xF004, 0xF011, 0xF012};
+  private static final String[] TYPES = {
+      "mifareClassic1k",
+      "mifareClassic4k",
+      MIFARE_ULTRALIGHT,
+      "mifareMini",
+      "mifarePlus2k",
+      "mifarePlus4k",
+      "mifarePlus2k",
+      "mifarePlus4k",
+      MIFARE_ULTRALIGHT_C,
+      "topaz",
+      "felica",
+      "felica",
+  };
+  private static final byte[] STORAGE_CARD_PREFIX = {0x3B, (byte) 0x8F, (byte) 0x80, 0x01, (byte) 0x80, 0x4F, 0x0C, (byte) 0xA0, 0x00, 0x00, 0x03, 0x06};
+  // The historical bytes of a DESFire's ATS, which some readers put after a length byte.
+  private static final byte[] DESFIRE_HISTORICAL_BYTES = {0x75, 0x77, (byte) 0x81, 0x02};
+  // The ATR an ACS reader builds for a DESFire, which leaves the historical bytes out.
+  private static final byte[] DESFIRE_ACS_ATR = {0x3B, (byte) 0x81, (byte) 0x80, 0x01, (byte) 0x80, (byte) 0x80};
+
+  private CardTypes() {
+  }
+
+  /**
+   * @return the type of the card, e.g. mifareClassic1k, or {@link #UNKNOWN} if the ATR isn't known or is null.
+   */
+  static String classify(byte[] atr) {
+    if (atr == null || atr.length < 4 || atr[0] != 0x3B || atr[2] != (byte) 0x80 || atr[3] != 0x01) return UNKNOWN;
+
+    if (startsWith(atr, STORAGE_CARD_PREFIX, 0) && atr.length >= STORAGE_CARD_PREFIX.length + 3) {
+      final int name = ((atr[13] & 0xFF) << 8) | (atr[14] & 0xFF);
+      for (int i = 0; i < NAMES.length; i++) {
+        if (NAMES[i] == name) return TYPES[i];
+      }
+
+      return UNKNOWN;
+    }
+
+    // The low nibble of T0 is the number of historical bytes, which follow TD1 and TD2.
+    final int historicalBytes = atr[1] & 0x0F;
+    if ((atr[1] & 0xF0) != 0x80 || atr.length < 4 + historicalBytes) return UNKNOWN;
+    if (startsWith(atr, DESFIRE_ACS_ATR, 0) || startsWith(atr, DESFIRE_HISTORICAL_BYTES, 4) || startsWith(atr, DESFIRE_HISTORICAL_BYTES, 5)) {
+      return DESFIRE;
+    }
+
+    return ISO_14443_4;
+  }
+
+  private static boolean startsWith(byte[] array, byte[] prefix, int offset) {
+    if (array.length < offset + prefix.length) return false;
+
+    for (int i = 0; i < prefix.length; i++) {
+      if (array[offset + i] != prefix[i]) return false;
+    }
+
+    return true;
+  }
+}
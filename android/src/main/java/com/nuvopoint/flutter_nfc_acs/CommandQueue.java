@@ -0,0 +1,220 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded queue of the requests waiting for the card, in two FIFO lanes. A request keeps its place while it's being
+ * sent, until it's done.
+ * <p>
+ * The interactive lane goes first: a bulk request is only sent while no interactive request is waiting, and it's
+ * preempted at the next APDU boundary when one arrives, if it can pick up where it left off afterwards, see
+ * {@link Transceive#canResume()}. A request is preempted at most {@link CardStreamHandler#MAX_PREEMPTIONS} times.
+ * <p>
+ * When the queue is full, a new request is handled by the overflow policy:
+ * <ul>
+ *   <li>{@link #OVERFLOW_REJECT}: the new request is turned away.</li>
+ *   <li>{@link #OVERFLOW_DROP_OLDEST}: the oldest request that hasn't started is dropped to make room, or the new
+ *   request is turned away if they've all started.</li>
+ *   <li>{@link #OVERFLOW_BLOCK}: the new request waits outside the queue until there's room.</li>
+ * </ul>
+ * Not thread safe, it's only used on the card reader's worker thread.
+ */
+class CommandQueue {
+  static final int OVERFLOW_REJECT = 0;
+  static final int OVERFLOW_DROP_OLDEST = 1;
+  static final int OVERFLOW_BLOCK = 2;
+  static final int DEFAULT_CAPACITY = 32;
+  // Latency critical requests, e.g. access checks.
+  static final int LANE_INTERACTIVE = 0;
+  // Requests that can wait, e.g. reading a whole file.
+  static final int LANE_BULK = 1;
+
+  private final ArrayDeque<Transceive> interactive = new ArrayDeque<>();
+  private final ArrayDeque<Transceive> bulk = new ArrayDeque<>();
+  private final ArrayDeque<Transceive> blocked = new ArrayDeque<>();
+  private int capacity = DEFAULT_CAPACITY;
+  private int overflow = OVERFLOW_REJECT;
+
+  // How long the requests waited before they were sent.
+  private long started = 0;
+  private long totalWaitMs = 0;
+  private long maxWaitMs = 0;
+
+  /**
+   * Changes the capacity and overflow policy. Requests beyond a smaller capacity keep their place.
+   */
+  void configure(int capacity, int overflow) {
+    if (capacity < 1) throw new IllegalArgumentException("The capacity must be at least 1, but was " + capacity);
+    if (overflow < OVERFLOW_REJECT || overflow > OVERFLOW_BLOCK) throw new IllegalArgumentException("Unknown overflow policy " + overflow);
+
+    this.capacity = capacity;
+    this.overflow = overflow;
+  }
+
+  /**
+   * Offers a request to the queue.
+   *
+   * @return the request that lost its place, which is the new one if it was rejected, or null if none did.
+   */
+  Transceive offer(Transceive transceive) {
+    transceive.queuedAt = SystemClock.elapsedRealtime();
+
+    if (size() < capacity) {
+      admit(transceive);
+      return null;
+    }
+
+    switch (overflow) {
+      case OVERFLOW_DROP_OLDEST:
+        // When every request has started, there's nothing to drop, so the new one is rejected instead.
+        final Transceive dropped = oldest(true);
+        if (dropped == null) return transceive;
+
+        lane(dropped).remove(dropped);
+        admit(transceive);
+        return dropped;
+      case OVERFLOW_BLOCK:
+        blocked.add(transceive);
+        return null;
+      default:
+        return transceive;
+    }
+  }
+
+  private void admit(Transceive transceive) {
+    lane(transceive).add(transceive);
+    transceive.onAdmitted();
+  }
+
+  private ArrayDeque<Transceive> lane(Transceive transceive) {
+    return transceive.lane == LANE_BULK ? bulk : interactive;
+  }
+
+  private int size() {
+    return interactive.size() + bulk.size();
+  }
+
+  /**
+   * @param unstarted whether to skip the requests that have started, which are the one being sent and the preempted
+   *     bulk requests, which were already handed to the card.
+   * @return the request that was queued first, or null if there's none.
+   */
+  private Transceive oldest(boolean unstarted) {
+    Transceive oldest = null;
+    for (ArrayDeque<Transceive> lane : Arrays.asList(interactive, bulk)) {
+      for (Transceive transceive : lane) {
+        if (unstarted && transceive.startedAt != 0) continue;
+        if (oldest == null || transceive.queuedAt < oldest.queuedAt) oldest = transceive;
+        break;
+      }
+    }
+
+    return oldest;
+  }
+
+  /**
+   * @return the request to send next, which is the head of the interactive lane if it's not empty, or null if the
+   *     queue is empty.
+   */
+  Transceive peek() {
+    final Transceive next = interactive.peek();
+    return next != null ? next : bulk.peek();
+  }
+
+  /**
+   * @return the head of one lane, or null if it's empty.
+   */
+  Transceive peek(int lane) {
+    return lane == LANE_BULK ? bulk.peek() : interactive.peek();
+  }
+
+  /**
+   * Starts the requests that were sent on a card that's gone over from their first command, including the bulk
+   * requests that were preempted, as there's nothing to resume on a new card.
+   */
+  void resetStarted() {
+    for (ArrayDeque<Transceive> lane : Arrays.asList(interactive, bulk)) {
+      for (Transceive transceive : lane) {
+        if (transceive.startedAt == 0) continue;
+
+        transceive.attemptStartedAt = 0;
+        transceive.preempted = false;
+        transceive.reset();
+      }
+    }
+  }
+
+  /**
+   * Records the wait of the request at the head of the queue, which is about to be sent, and starts its attempt unless
+   * it's resuming one. A request that's restarted on a new card, or resumed, isn't counted again.
+   */
+  void onStarted(Transceive transceive) {
+    final long now = SystemClock.elapsedRealtime();
+    if (transceive.attemptStartedAt == 0) transceive.attemptStartedAt = now;
+    if (transceive.startedAt != 0) return;
+
+    transceive.startedAt = now;
+    final long waitMs = transceive.startedAt - transceive.queuedAt;
+    started++;
+    totalWaitMs += waitMs;
+    maxWaitMs = Math.max(maxWaitMs, waitMs);
+  }
+
+  /**
+   * Removes a request that's done, and lets a blocked request in, if there's room.
+   */
+  void remove(Transceive transceive) {
+    lane(transceive).remove(transceive);
+    while (!blocked.isEmpty() && size() < capacity) {
+      admit(blocked.poll());
+    }
+  }
+
+  boolean contains(int id) {
+    for (ArrayDeque<Transceive> lane : Arrays.asList(interactive, bulk, blocked)) {
+      for (Transceive transceive : lane) {
+        if (transceive.id == id) return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Empties the queue, including the blocked requests.
+   *
+   * @return the requests that were removed, in order.
+   */
+  ArrayDeque<Transceive> clear() {
+    final ArrayDeque<Transceive> removed = new ArrayDeque<>(interactive);
+    removed.addAll(bulk);
+    removed.addAll(blocked);
+    interactive.clear();
+    bulk.clear();
+    blocked.clear();
+    return removed;
+  }
+
+  /**
+   * @return the depth of the queue and the wait times so far, for the QUEUE_STATS method.
+   */
+  Map<String, Object> getStats() {
+    final HashMap<String, Object> stats = new HashMap<>();
+    stats.put("depth", size());
+    stats.put("bulkDepth", bulk.size());
+    stats.put("blocked", blocked.size());
+    stats.put("capacity", capacity);
+    stats.put("started", started);
+    stats.put("averageWaitMs", started == 0 ? 0 : totalWaitMs / started);
+    stats.put("maxWaitMs", maxWaitMs);
+
+    final Transceive oldest = oldest(false);
+    stats.put("oldestWaitMs", oldest == null ? 0 : SystemClock.elapsedRealtime() - oldest.queuedAt);
+    return stats;
+  }
+}
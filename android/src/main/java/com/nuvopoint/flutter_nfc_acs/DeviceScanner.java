@@ -3,35 +3,69 @@ package com.nuvopoint.flutter_nfc_acs;
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.os.Handler;
-import android.os.Looper;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Build;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import io.flutter.plugin.common.EventChannel.EventSink;
 import io.flutter.plugin.common.EventChannel.StreamHandler;
 
 import static android.content.ContentValues.TAG;
 import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_NO_PERMISSIONS;
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_SCAN_FAILED;
 
+/**
+ * A StreamHandler that scans for readers, and emits what changed about the devices found, in batches: the devices
+ * that were added, updated and lost, see {@link DiscoveredDevices}. A batch with reset set starts a new scan.
+ * <p>
+ * From Lollipop, the scan runs on a BluetoothLeScanner, which leaves the filtering, and where the controller supports
+ * it the batching of the results, to the bluetooth controller, see {@link ScanConfig}. Older devices fall back to
+ * BluetoothAdapter.startLeScan.
+ * <p>
+ * A scan follows the policy of its config: a one shot scan stops after its duration, a duty cycle turns the radio on
+ * for a window of every interval, which also keeps the platform from demoting a scan that runs for more than 30
+ * minutes, and an opportunistic scan runs until the stream is cancelled. The radio is only turned on as often as the
+ * platform allows, see {@link ScanStartLimiter}.
+ */
 class DeviceScanner extends BluetoothPermissions implements StreamHandler {
-  private HashMap<String, String> btDevices;
+  private final DiscoveredDevices btDevices = new DiscoveredDevices();
   private final BluetoothAdapter bluetoothAdapter;
   private EventSink events;
-  private final Handler handler;
+  // Whether a scan is running, of which the radio may only be on for a window.
   private boolean scanning = false;
+  private boolean radioOn = false;
   private final Activity activity;
 
-  private static final long SCAN_PERIOD = 10000;
+  // How often the changes are emitted while scanning.
+  private static final long BATCH_INTERVAL_MS = 250;
+  private final Runnable flushBatch = this::flushBatch;
+  private final Runnable startRadio = this::startRadio;
+  private final Runnable endWindow = this::endWindow;
+  private final Runnable endScan = this::endScan;
+  private final ScanStartLimiter startLimiter = new ScanStartLimiter();
+  // Read on the scan thread, and replaced on the main thread.
+  private volatile ScanConfig config = new ScanConfig();
+  // Created on first use, as ScanCallback doesn't exist below Lollipop.
+  private LeScanCallback leScanCallback;
 
   DeviceScanner(@NonNull BluetoothAdapter adapter, @NonNull Activity activity) {
     bluetoothAdapter = adapter;
     this.activity = activity;
-    handler = new Handler();
   }
 
   @Override
@@ -53,36 +87,224 @@ class DeviceScanner extends BluetoothPermissions implements StreamHandler {
     events = null;
   }
 
-  /* Device scan callback. */
-  private BluetoothAdapter.LeScanCallback mLeScanCallback = (device, rssi, scanRecord) -> {
-    if (events != null) {
-      new Handler(Looper.getMainLooper()).post(() -> {
-        if (!btDevices.containsKey(device.getAddress())) {
-          btDevices.put(device.getAddress(), device.getName());
-          events.success(btDevices);
+  /**
+   * Replaces what the scan looks for, which restarts a scan that's running.
+   */
+  void configure(ScanConfig config) {
+    this.config = config;
+    if (scanning) {
+      stopScan();
+      startScan();
+    }
+  }
+
+  /* Device scan callback, below Lollipop. */
+  private BluetoothAdapter.LeScanCallback mLeScanCallback = (device, rssi, scanRecord) -> onAdvert(device, device.getName(), ScanConfig.parseServiceUuids(scanRecord), rssi, scanRecord);
+
+  @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+  private class LeScanCallback extends ScanCallback {
+    @Override
+    public void onScanResult(int callbackType, ScanResult result) {
+      onResult(result);
+    }
+
+    @Override
+    public void onBatchScanResults(List<ScanResult> results) {
+      for (ScanResult result : results) {
+        onResult(result);
+      }
+    }
+
+    @Override
+    public void onScanFailed(int errorCode) {
+      Log.e(TAG, "The scan failed with " + errorCode);
+      MainThreadDispatcher.post(() -> {
+        stopScan();
+        if (events != null) {
+          events.error(ERROR_SCAN_FAILED, "The scan failed with " + errorCode, null);
         }
       });
+    }
+
+    private void onResult(ScanResult result) {
+      final ScanRecord record = result.getScanRecord();
+      final String name = record != null && record.getDeviceName() != null ? record.getDeviceName() : result.getDevice().getName();
+      final List<UUID> serviceUuids = new ArrayList<>();
+      if (record != null && record.getServiceUuids() != null) {
+        for (ParcelUuid uuid : record.getServiceUuids()) serviceUuids.add(uuid.getUuid());
+      }
+
+      onAdvert(result.getDevice(), name, serviceUuids, result.getRssi(), record == null ? null : record.getBytes());
+    }
+  }
+
+  private void onAdvert(BluetoothDevice device, String name, List<UUID> serviceUuids, int rssi, byte[] advertisingData) {
+    if (events != null) {
+      if (!config.matches(name, serviceUuids)) return;
+
+      // Devices advertise many times a second, so the adverts are only recorded on the scan thread, and what changed
+      // is emitted in batches, on the main thread.
+      synchronized (btDevices) {
+        btDevices.onSeen(device.getAddress(), name, rssi, advertisingData, SystemClock.elapsedRealtime());
+      }
     } else {
       Log.w(TAG, "Could not output devices, because the event sink was null");
     }
-  };
+  }
+
+  /**
+   * Emits the changes since the last batch, if there are any, and schedules the next batch while the radio is on. The
+   * devices aren't expired while it's off, so the app isn't woken up for nothing.
+   */
+  private void flushBatch() {
+    final Map<String, Object> batch;
+    synchronized (btDevices) {
+      btDevices.expire(SystemClock.elapsedRealtime(), config.deviceTtlMs);
+      batch = btDevices.drainChanges();
+    }
+
+    if (batch != null && events != null) {
+      events.success(batch);
+    }
+
+    if (radioOn) {
+      MainThreadDispatcher.postDelayed(flushBatch, BATCH_INTERVAL_MS);
+    }
+  }
 
   private void startScan() {
-    btDevices = new HashMap<>();
-    handler.postDelayed(() -> {
-      if (scanning) {
-        scanning = false;
-        bluetoothAdapter.stopLeScan(mLeScanCallback);
-      }
-    }, SCAN_PERIOD);
+    synchronized (btDevices) {
+      btDevices.clear();
+    }
 
     scanning = true;
-    bluetoothAdapter.startLeScan(mLeScanCallback);
+    if (config.policy == ScanConfig.POLICY_ONE_SHOT) {
+      MainThreadDispatcher.postDelayed(endScan, config.durationMs);
+    }
+
+    startRadio();
+  }
+
+  /**
+   * Turns the radio on, or schedules it for when the platform allows another scan to start.
+   */
+  private void startRadio() {
+    if (!scanning || radioOn) return;
+
+    final long now = SystemClock.elapsedRealtime();
+    final long delay = startLimiter.delayUntilAllowed(now);
+    if (delay > 0) {
+      Log.d(TAG, "Delaying the scan by " + delay + "ms, to stay within the scan start limit");
+      MainThreadDispatcher.postDelayed(startRadio, delay);
+      return;
+    }
+
+    startLimiter.onStarted(now);
+    radioOn = true;
+    MainThreadDispatcher.removeCallbacks(flushBatch);
+    MainThreadDispatcher.postDelayed(flushBatch, BATCH_INTERVAL_MS);
+
+    final BluetoothLeScanner scanner = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? bluetoothAdapter.getBluetoothLeScanner() : null;
+    if (scanner != null) {
+      startLeScan(scanner, config);
+    } else {
+      startLegacyScan(config);
+    }
+
+    if (config.policy == ScanConfig.POLICY_DUTY_CYCLE && config.scanWindowMs < config.scanIntervalMs) {
+      MainThreadDispatcher.postDelayed(endWindow, config.scanWindowMs);
+    }
+  }
+
+  /**
+   * Turns the radio off for the rest of the duty cycle's interval.
+   */
+  private void endWindow() {
+    stopRadio();
+    MainThreadDispatcher.removeCallbacks(flushBatch);
+    flushBatch();
+    MainThreadDispatcher.postDelayed(startRadio, config.scanIntervalMs - config.scanWindowMs);
+  }
+
+  /**
+   * Ends a one shot scan, and emits what changed since the last batch.
+   */
+  private void endScan() {
+    if (scanning) {
+      stopScan();
+      flushBatch();
+    }
+  }
+
+  @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+  private void startLeScan(BluetoothLeScanner scanner, ScanConfig config) {
+    final List<ScanFilter> filters = new ArrayList<>();
+    for (UUID uuid : config.serviceUuids) {
+      filters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(uuid)).build());
+    }
+    for (String name : config.names) {
+      filters.add(new ScanFilter.Builder().setDeviceName(name).build());
+    }
+
+    int scanMode = config.scanMode;
+    if (config.policy == ScanConfig.POLICY_OPPORTUNISTIC) {
+      scanMode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? ScanSettings.SCAN_MODE_OPPORTUNISTIC : ScanSettings.SCAN_MODE_LOW_POWER;
+    }
+
+    final ScanSettings.Builder settings = new ScanSettings.Builder().setScanMode(scanMode);
+    // A controller that can't batch fails the scan if it's asked to.
+    if (config.reportDelayMs > 0 && bluetoothAdapter.isOffloadedScanBatchingSupported()) {
+      settings.setReportDelay(config.reportDelayMs);
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      settings.setMatchMode(config.matchMode);
+    }
+
+    if (leScanCallback == null) leScanCallback = new LeScanCallback();
+    // An empty list of filters matches every device.
+    scanner.startScan(filters, settings.build(), leScanCallback);
+  }
+
+  /**
+   * Scans with the API from before Lollipop, which is deprecated, but the only one there is on those versions.
+   */
+  @SuppressWarnings("deprecation")
+  private void startLegacyScan(ScanConfig config) {
+    if (config.serviceUuids.isEmpty() || !config.names.isEmpty()) {
+      // The platform would require one of the service UUIDs, rather than it or one of the names.
+      bluetoothAdapter.startLeScan(mLeScanCallback);
+    } else {
+      bluetoothAdapter.startLeScan(config.serviceUuids.toArray(new UUID[0]), mLeScanCallback);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private void stopLegacyScan() {
+    stopLegacyScan();
   }
 
   private void stopScan() {
-    bluetoothAdapter.stopLeScan(mLeScanCallback);
     scanning = false;
+    MainThreadDispatcher.removeCallbacks(flushBatch);
+    MainThreadDispatcher.removeCallbacks(startRadio);
+    MainThreadDispatcher.removeCallbacks(endWindow);
+    MainThreadDispatcher.removeCallbacks(endScan);
+    stopRadio();
+  }
+
+  private void stopRadio() {
+    if (!radioOn) return;
+    radioOn = false;
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && leScanCallback != null) {
+      final BluetoothLeScanner scanner = bluetoothAdapter.getBluetoothLeScanner();
+      // The scanner is null while bluetooth is off, which stopped the scan already.
+      if (scanner != null) {
+        scanner.flushPendingScanResults(leScanCallback);
+        scanner.stopScan(leScanCallback);
+      }
+    }
+    stopLegacyScan();
   }
 
   @Override
@@ -0,0 +1,141 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The devices found during a scan, keyed by their address, and what changed about them since the last batch was
+ * drained, so only the changes are sent to Dart.
+ * <p>
+ * A device is updated when its name or advertising data changes, or its RSSI moves by {@link #RSSI_THRESHOLD} or more
+ * from the last one reported, so the noise of each advert isn't. It's lost once it hasn't been seen for the time to
+ * live.
+ * <p>
+ * Not thread safe, the scanner synchronizes on it.
+ */
+class DiscoveredDevices {
+  static final int RSSI_THRESHOLD = 5;
+
+  private static final class Device {
+    final String address;
+    String name;
+    int rssi;
+    long lastSeen;
+    byte[] advertisingData;
+
+    Device(String address) {
+      this.address = address;
+    }
+  }
+
+  private final HashMap<String, Device> devices = new HashMap<>();
+  // The addresses that changed since the last batch, in the order they did.
+  private final LinkedHashSet<String> added = new LinkedHashSet<>();
+  private final LinkedHashSet<String> updated = new LinkedHashSet<>();
+  private final List<String> lost = new ArrayList<>();
+  // Set when the devices were cleared, so the next batch tells Dart to forget the devices it has.
+  private boolean reset = false;
+
+  /**
+   * Records an advert of a device.
+   *
+   * @param now the current time, in elapsed realtime milliseconds.
+   * @return true if the device wasn't found before.
+   */
+  boolean onSeen(String address, String name, int rssi, byte[] advertisingData, long now) {
+    Device device = devices.get(address);
+    if (device == null) {
+      device = new Device(address);
+      device.name = name;
+      device.rssi = rssi;
+      device.lastSeen = now;
+      device.advertisingData = advertisingData;
+      devices.put(address, device);
+      added.add(address);
+      return true;
+    }
+
+    device.lastSeen = now;
+    final boolean changed = (name != null && !name.equals(device.name))
+        || Math.abs(rssi - device.rssi) >= RSSI_THRESHOLD
+        || !Arrays.equals(advertisingData, device.advertisingData);
+    if (!changed) return false;
+
+    if (name != null) device.name = name;
+    device.rssi = rssi;
+    device.advertisingData = advertisingData;
+    if (!added.contains(address)) updated.add(address);
+    return false;
+  }
+
+  /**
+   * Drops the devices that weren't seen within the time to live, which are reported as lost.
+   */
+  void expire(long now, long ttlMs) {
+    final Iterator<Device> it = devices.values().iterator();
+    while (it.hasNext()) {
+      final Device device = it.next();
+      if (now - device.lastSeen <= ttlMs) continue;
+
+      it.remove();
+      // A device that's found and lost within one batch is never reported.
+      if (!added.remove(device.address)) {
+        updated.remove(device.address);
+        lost.add(device.address);
+      }
+    }
+  }
+
+  /**
+   * @return the devices that were added, updated and lost since the last batch, as a map of lists with those keys, and
+   *     whether the devices were cleared in between, or null if nothing changed.
+   */
+  Map<String, Object> drainChanges() {
+    if (!reset && added.isEmpty() && updated.isEmpty() && lost.isEmpty()) return null;
+
+    final HashMap<String, Object> batch = new HashMap<>();
+    batch.put("added", toMaps(added));
+    batch.put("updated", toMaps(updated));
+    batch.put("lost", new ArrayList<>(lost));
+    batch.put("reset", reset);
+
+    added.clear();
+    updated.clear();
+    lost.clear();
+    reset = false;
+    return batch;
+  }
+
+  private List<Map<String, Object>> toMaps(Iterable<String> addresses) {
+    final List<Map<String, Object>> maps = new ArrayList<>();
+    for (String address : addresses) {
+      final Device device = devices.get(address);
+      final HashMap<String, Object> map = new HashMap<>();
+      map.put("address", device.address);
+      map.put("name", device.name);
+      map.put("rssi", device.rssi);
+      map.put("lastSeenMs", device.lastSeen);
+      map.put("advertisingData", device.advertisingData);
+      maps.add(map);
+    }
+
+    return maps;
+  }
+
+  int size() {
+    return devices.size();
+  }
+
+  void clear() {
+    devices.clear();
+    added.clear();
+    updated.clear();
+    lost.clear();
+    reset = true;
+  }
+}
@@ -1,14 +1,8 @@
 package com.nuvopoint.flutter_nfc_acs;
 
 import android.app.Activity;
-import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.BluetoothProfile;
 import android.content.Context;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -16,17 +10,19 @@ import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.OnLifecycleEvent;
 
-import com.acs.bluetooth.Acr1255uj1Reader;
-import com.acs.bluetooth.BluetoothReader;
-import com.acs.bluetooth.BluetoothReaderGattCallback;
-import com.acs.bluetooth.BluetoothReaderManager;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
 import io.flutter.embedding.engine.plugins.lifecycle.FlutterLifecycleAdapter;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
-import io.flutter.plugin.common.EventChannel.StreamHandler;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
@@ -35,12 +31,36 @@ import static android.content.ContentValues.TAG;
 
 /**
  * FlutterNfcAcsPlugin
+ * <p>
+ * The reader connected with CONNECT uses the device channels, e.g. {@code flutter.nuvopoint.com/nfc/acs/device/card}.
+ * More readers are connected at once with CONNECT_READER, which adds a {@link ReaderConnection} to the pool, whose
+ * streams are on the channels of its address, e.g. {@code flutter.nuvopoint.com/nfc/acs/reader/<address>/card}. The
+ * method calls go to the pooled reader of their 'reader' argument, if they have one.
  */
-public class FlutterNfcAcsPlugin extends BluetoothPermissions implements FlutterPlugin, ActivityAware, MethodCallHandler, StreamHandler, LifecycleObserver {
+public class FlutterNfcAcsPlugin extends BluetoothPermissions implements FlutterPlugin, ActivityAware, MethodCallHandler, LifecycleObserver {
   // The method channel's commands
   private static final String CONNECT = "CONNECT";
   private static final String DISCONNECT = "DISCONNECT";
+  private static final String CONNECT_READER = "CONNECT_READER";
+  private static final String DISCONNECT_READER = "DISCONNECT_READER";
   private static final String SEND_APDU = "SEND_APDU";
+  private static final String TRANSMIT_APDU = "TRANSMIT_APDU";
+  private static final String TRANSCEIVE = "TRANSCEIVE";
+  private static final String RUN_APDU_SCRIPT = "RUN_APDU_SCRIPT";
+  private static final String READ_MIFARE_SECTORS = "READ_MIFARE_SECTORS";
+  private static final String READ_NDEF = "READ_NDEF";
+  private static final String SIMULATE = "SIMULATE";
+  private static final String START_TRACE = "START_TRACE";
+  private static final String STOP_TRACE = "STOP_TRACE";
+  private static final String REPLAY_TRACE = "REPLAY_TRACE";
+  private static final String CONFIGURE_QUEUE = "CONFIGURE_QUEUE";
+  private static final String QUEUE_STATS = "QUEUE_STATS";
+  private static final String TAP_STATS = "TAP_STATS";
+  private static final String CONFIGURE_REPEATS = "CONFIGURE_REPEATS";
+  private static final String CONFIGURE_TIMEOUTS = "CONFIGURE_TIMEOUTS";
+  private static final String CONFIGURE_RESPONSE_CACHE = "CONFIGURE_RESPONSE_CACHE";
+  private static final String RESPONSE_CACHE_STATS = "RESPONSE_CACHE_STATS";
+  private static final String CONFIGURE_SCAN = "CONFIGURE_SCAN";
 
   // Error codes
   // TODO: Figure out how to transmit errors that are detected in listeners.
@@ -49,66 +69,68 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
   private static final String ERROR_MISSING_ADDRESS = "missing_address";
   private static final String ERROR_MISSING_APDU_COMMAND = "missing_apdu_command";
   private static final String ERROR_DEVICE_NOT_FOUND = "device_not_found";
-  private static final String ERROR_DEVICE_NOT_SUPPORTED = "device_not_supported";
+  private static final String ERROR_MISSING_REQUEST_ID = "missing_request_id";
+  private static final String ERROR_INVALID_SCRIPT = "invalid_script";
+  private static final String ERROR_INVALID_SIMULATION = "invalid_simulation";
+  private static final String ERROR_TRACE_FAILED = "trace_failed";
+  private static final String ERROR_INVALID_QUEUE_CONFIGURATION = "invalid_queue_configuration";
+  private static final String ERROR_INVALID_REPEAT_CONFIGURATION = "invalid_repeat_configuration";
+  private static final String ERROR_INVALID_CACHE_CONFIGURATION = "invalid_cache_configuration";
+  private static final String ERROR_INVALID_MIFARE_READ = "invalid_mifare_read";
+  private static final String ERROR_INVALID_SCAN_CONFIGURATION = "invalid_scan_configuration";
+  private static final String ERROR_READER_NOT_CONNECTED = "reader_not_connected";
+  static final String ERROR_DEVICE_NOT_SUPPORTED = "device_not_supported";
   static final String ERROR_NO_PERMISSIONS = "no_permissions";
+  static final String ERROR_DUPLICATE_REQUEST_ID = "duplicate_request_id";
+  static final String ERROR_READER_DISPOSED = "reader_disposed";
+  static final String ERROR_QUEUE_FULL = "queue_full";
+  static final String ERROR_COMMAND_DROPPED = "command_dropped";
+  static final String ERROR_READER_TIMEOUT = "reader_timeout";
+  static final String ERROR_APDU_FAILED = "apdu_failed";
+  static final String ERROR_MIFARE_READ_FAILED = "mifare_read_failed";
+  static final String ERROR_NDEF_READ_FAILED = "ndef_read_failed";
+  static final String ERROR_SCAN_FAILED = "scan_failed";
+  static final String ERROR_OFFLINE_READER_FAILED = "offline_reader_failed";
 
   // Flutter channels
   private MethodChannel channel;
   private EventChannel devicesChannel;
-  // These are hooked up on a successful connection to a device.
-  private EventChannel deviceBatteryChannel;
-  private EventChannel deviceStatusChannel;
-  private EventChannel deviceCardChannel;
-
-  // The sink for status events
-  private EventChannel.EventSink statusEvents;
-  private static final String CONNECTED = "CONNECTED";
-  private static final String CONNECTING = "CONNECTING";
-  private static final String DISCONNECTED = "DISCONNECTED";
-  private static final String DISCONNECTING = "DISCONNECTING";
-  private static final String UNKNOWN_CONNECTION_STATE = "UNKNOWN_CONNECTION_STATE";
-
-  // Sleep mode options
-  /*private static final byte SLEEP_60_SEC = 0x00;
-  private static final byte SLEEP_90_SEC = 0x01;
-  private static final byte SLEEP_120_SEC = 0x02;
-  private static final byte SLEEP_180_SEC = 0x03;*/
-  private static final byte SLEEP_NEVER = 0x04;
-
-  // "ACR1255U-J1 Auth" in text;
-  private static final byte[] DEFAULT_1255_MASTER_KEY = {(byte) 65, 67, 82, 49, 50, 53, 53, 85, 45, 74, 49, 32, 65, 117, 116, 104};
+  private BinaryMessenger messenger;
 
   private ActivityPluginBinding activityBinding;
   private BluetoothManager bluetoothManager;
-  private BluetoothGatt mBluetoothGatt;
-  private BluetoothReaderManager mBluetoothReaderManager;
-  private BluetoothReaderGattCallback mGattCallback;
   private Context context;
 
   // A DeviceScanner scans for bluetooth devices
   private DeviceScanner deviceScanner;
-  private BatteryStreamHandler batteryStreamHandler;
-  private CardStreamHandler cardStreamHandler;
 
-  // Connection state
-  private int mConnectState = BluetoothReader.STATE_DISCONNECTED;
+  // The reader connected with CONNECT, whose streams are on the device channels.
+  private ReaderConnection primaryReader;
+  // The readers connected with CONNECT_READER, by their address.
+  private final LinkedHashMap<String, ReaderConnection> pooledReaders = new LinkedHashMap<>();
+  // What's known about the readers connected to so far, which outlives the connections.
+  private final ReaderProfiles readerProfiles = new ReaderProfiles();
 
   // Variables for pending permissions
   private MethodCall pendingMethodCall;
   private MethodChannel.Result pendingResult;
   private boolean pendingResultComplete = false;
 
-  // The address is kept in memory in case of life cycle events
+  // The addresses are kept in memory in case of life cycle events
   private String address;
+  private final List<String> pooledAddresses = new ArrayList<>();
+
+  // Replaces the bluetooth reader when set, see SIMULATE and REPLAY_TRACE.
+  private OfflineReader offlineReader;
+  // Records the interactions with the reader when set, see START_TRACE.
+  private TraceRecorder traceRecorder;
 
   @Override
   public void onAttachedToEngine(final @NonNull FlutterPluginBinding flutterPluginBinding) {
     context = flutterPluginBinding.getApplicationContext();
-    channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), "flutter.nuvopoint.com/nfc/acs");
-    devicesChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "flutter.nuvopoint.com/nfc/acs/devices");
-    deviceBatteryChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "flutter.nuvopoint.com/nfc/acs/device/battery");
-    deviceStatusChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "flutter.nuvopoint.com/nfc/acs/device/status");
-    deviceCardChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), "flutter.nuvopoint.com/nfc/acs/device/card");
+    messenger = flutterPluginBinding.getBinaryMessenger();
+    channel = new MethodChannel(messenger, "flutter.nuvopoint.com/nfc/acs");
+    devicesChannel = new EventChannel(messenger, "flutter.nuvopoint.com/nfc/acs/devices");
   }
 
   @Override
@@ -158,14 +180,14 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
 
         address = call.argument("address");
         if (address == null) {
-          new Handler(Looper.getMainLooper()).post(() -> result.error(ERROR_MISSING_ADDRESS, "The address argument cannot be null", null));
+          MainThreadDispatcher.post(() -> result.error(ERROR_MISSING_ADDRESS, "The address argument cannot be null", null));
           return;
         }
 
-        if (connectToReader()) {
-          new Handler(Looper.getMainLooper()).post(() -> result.success(null));
+        if (primaryReader.connect(address)) {
+          MainThreadDispatcher.post(() -> result.success(null));
         } else {
-          new Handler(Looper.getMainLooper()).post(() -> result.error(ERROR_DEVICE_NOT_FOUND, "The bluetooth device could not be found", null));
+          MainThreadDispatcher.post(() -> result.error(ERROR_DEVICE_NOT_FOUND, "The bluetooth device could not be found", null));
         }
 
         break;
@@ -175,8 +197,21 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
           return;
         }
 
-        disconnectFromReader();
-        new Handler(Looper.getMainLooper()).post(() -> result.success(null));
+        primaryReader.disconnect();
+        MainThreadDispatcher.post(() -> result.success(null));
+        break;
+
+      case CONNECT_READER:
+        if (!hasPermissions()) {
+          requestPermissions();
+          return;
+        }
+
+        doConnectReader(call, result);
+        break;
+
+      case DISCONNECT_READER:
+        doDisconnectReader(call, result);
         break;
 
       case SEND_APDU:
@@ -187,50 +222,522 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
 
         doSendApdu(call, result);
         break;
+
+      case TRANSMIT_APDU:
+        if (!hasPermissions()) {
+          requestPermissions();
+          return;
+        }
+
+        doTransmitApdu(call, result);
+        break;
+
+      case TRANSCEIVE:
+        if (!hasPermissions()) {
+          requestPermissions();
+          return;
+        }
+
+        doTransceive(call, result);
+        break;
+
+      case RUN_APDU_SCRIPT:
+        if (!hasPermissions()) {
+          requestPermissions();
+          return;
+        }
+
+        doRunApduScript(call, result);
+        break;
+
+      case READ_MIFARE_SECTORS:
+        if (!hasPermissions()) {
+          requestPermissions();
+          return;
+        }
+
+        doReadMifareSectors(call, result);
+        break;
+
+      case READ_NDEF:
+        if (!hasPermissions()) {
+          requestPermissions();
+          return;
+        }
+
+        doReadNdef(call, result);
+        break;
+
+      case SIMULATE:
+        doSimulate(call, result);
+        break;
+
+      case START_TRACE:
+        doStartTrace(call, result);
+        break;
+
+      case STOP_TRACE:
+        doStopTrace(result);
+        break;
+
+      case REPLAY_TRACE:
+        doReplayTrace(call, result);
+        break;
+
+      case CONFIGURE_QUEUE:
+        doConfigureQueue(call, result);
+        break;
+
+      case QUEUE_STATS: {
+        final ReaderConnection reader = readerOf(call, result);
+        if (reader != null) reader.cardStreamHandler.getQueueStats(result);
+        break;
+      }
+
+      case TAP_STATS: {
+        final ReaderConnection reader = readerOf(call, result);
+        if (reader != null) reader.cardStreamHandler.getTapStats(result);
+        break;
+      }
+
+      case CONFIGURE_REPEATS:
+        doConfigureRepeats(call, result);
+        break;
+
+      case CONFIGURE_TIMEOUTS:
+        doConfigureTimeouts(call, result);
+        break;
+
+      case CONFIGURE_RESPONSE_CACHE:
+        doConfigureResponseCache(call, result);
+        break;
+
+      case RESPONSE_CACHE_STATS: {
+        final ReaderConnection reader = readerOf(call, result);
+        if (reader != null) reader.cardStreamHandler.getResponseCacheStats(result);
+        break;
+      }
+
+      case CONFIGURE_SCAN:
+        doConfigureScan(call, result);
+        break;
       default:
     }
   }
 
   private void doSendApdu(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ReaderConnection reader = readerOf(call, result);
+    if (reader == null) return;
+
     String encodedString = call.argument("data");
     if (encodedString == null) {
-      new Handler(Looper.getMainLooper()).post(() -> result.error(ERROR_MISSING_APDU_COMMAND, "The apdu command argument cannot be null", null));
+      MainThreadDispatcher.post(() -> result.error(ERROR_MISSING_APDU_COMMAND, "The apdu command argument cannot be null", null));
+      return;
+    }
+
+    final byte[][] data = Utils.decodeApduCommands(encodedString);
+    Log.i(TAG, "Decoded " + data.length + " apdu commands");
+
+    if (data.length == 1) {
+      reader.cardStreamHandler.sendApdu(data[0], false, result);
+    } else {
+      reader.cardStreamHandler.sendMultipleApduWithMergedResult(data, false, result);
+    }
+  }
+
+  /**
+   * Sends the commands as raw bytes. The StandardMessageCodec decodes a Uint8List into a byte[], so no decoding is
+   * needed, and the merged response is emitted on the card stream as a byte[] too.
+   */
+  private void doTransmitApdu(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ReaderConnection reader = readerOf(call, result);
+    if (reader == null) return;
+
+    final List<byte[]> commands = call.argument("commands");
+    if (commands == null || commands.isEmpty()) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_MISSING_APDU_COMMAND, "The apdu command argument cannot be null", null));
+      return;
+    }
+
+    if (commands.size() == 1) {
+      reader.cardStreamHandler.sendApdu(commands.get(0), true, result);
+    } else {
+      reader.cardStreamHandler.sendMultipleApduWithMergedResult(commands.toArray(new byte[0][]), true, result);
+    }
+  }
+
+  /**
+   * Like TRANSMIT_APDU, but the merged response completes the result instead of being emitted on the card stream.
+   * The request ID correlates the result with its commands, so several requests can be in flight at once. If cache is
+   * set, the commands are reads, whose responses may come from the response cache.
+   */
+  private void doTransceive(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ReaderConnection reader = readerOf(call, result);
+    if (reader == null) return;
+
+    final Integer id = call.argument("id");
+    if (id == null) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_MISSING_REQUEST_ID, "The id argument cannot be null", null));
+      return;
+    }
+
+    final List<byte[]> commands = call.argument("commands");
+    if (commands == null || commands.isEmpty()) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_MISSING_APDU_COMMAND, "The apdu command argument cannot be null", null));
+      return;
+    }
+
+    final Boolean cache = call.argument("cache");
+    reader.cardStreamHandler.transceive(id, commands.toArray(new byte[0][]), parseLane(call), cache != null && cache, result);
+  }
+
+  /**
+   * Runs an ApduScript on the next card, and completes the result with the outcome of each step.
+   */
+  private void doRunApduScript(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ReaderConnection reader = readerOf(call, result);
+    if (reader == null) return;
+
+    final Integer id = call.argument("id");
+    if (id == null) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_MISSING_REQUEST_ID, "The id argument cannot be null", null));
       return;
     }
 
-    String[] parts = encodedString.split("\\|");
-    if (parts.length == 1) {
-      Log.i(TAG, "Decoding: " +  encodedString);
-      final byte[] decoded = android.util.Base64.decode(encodedString, android.util.Base64.DEFAULT);
-      Log.i(TAG, "byte array size " +  decoded.length);
-      cardStreamHandler.sendApdu(decoded);
+    final ApduScript script;
+    try {
+      script = ApduScript.parse(id, call.argument("steps"), result);
+    } catch (IllegalArgumentException | ClassCastException e) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_INVALID_SCRIPT, e.getMessage(), null));
+      return;
     }
 
-    if (parts.length > 1) {
-      byte[][] data = new byte[parts.length][];
+    if (script.hasFailed()) {
+      MainThreadDispatcher.post(() -> result.success(script.getResult()));
+      return;
+    }
+
+    script.lane = parseLane(call);
+    reader.cardStreamHandler.runScript(script);
+  }
+
+  /**
+   * Reads a range of sectors of a MIFARE Classic card natively, see {@link MifareSectorRead}, and completes the result
+   * with their blocks.
+   */
+  private void doReadMifareSectors(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ReaderConnection reader = readerOf(call, result);
+    if (reader == null) return;
+
+    final Integer id = call.argument("id");
+    if (id == null) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_MISSING_REQUEST_ID, "The id argument cannot be null", null));
+      return;
+    }
+
+    final MifareSectorRead read;
+    try {
+      read = MifareSectorRead.parse(id, call.arguments(), result);
+    } catch (IllegalArgumentException | ClassCastException e) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_INVALID_MIFARE_READ, e.getMessage(), null));
+      return;
+    }
+
+    read.lane = parseLane(call);
+    reader.cardStreamHandler.readMifareSectors(read);
+  }
+
+  /**
+   * Reads the NDEF message of a Type 2 tag natively, see {@link NdefTagRead}, and completes the result with its bytes.
+   * If fastRead is null, whether the tag is probed for FAST_READ is decided from its ATR.
+   */
+  private void doReadNdef(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ReaderConnection reader = readerOf(call, result);
+    if (reader == null) return;
+
+    final Integer id = call.argument("id");
+    if (id == null) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_MISSING_REQUEST_ID, "The id argument cannot be null", null));
+      return;
+    }
+
+    final Boolean fastRead = call.argument("fastRead");
+    final NdefTagRead read = new NdefTagRead(id, fastRead, result);
+    read.lane = parseLane(call);
+    reader.cardStreamHandler.readNdef(read);
+  }
+
+  /**
+   * Connects to the reader at the address argument, and adds it to the pool, or reconnects to it if it's in the pool
+   * already. Its streams are on the channels of its address.
+   */
+  private void doConnectReader(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final String readerAddress = call.argument("address");
+    if (readerAddress == null) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_MISSING_ADDRESS, "The address argument cannot be null", null));
+      return;
+    }
+
+    if (openPooledReader(readerAddress).connect(readerAddress)) {
+      MainThreadDispatcher.post(() -> result.success(null));
+    } else {
+      MainThreadDispatcher.post(() -> result.error(ERROR_DEVICE_NOT_FOUND, "The bluetooth device could not be found", null));
+    }
+  }
+
+  /**
+   * Disconnects the pooled reader at the address argument, and removes it from the pool, which ends its streams.
+   */
+  private void doDisconnectReader(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final String readerAddress = call.argument("address");
+    final ReaderConnection reader = pooledReaders.remove(readerAddress);
+    pooledAddresses.remove(readerAddress);
+    if (reader != null) {
+      reader.close();
+    }
+
+    MainThreadDispatcher.post(() -> result.success(null));
+  }
+
+  /**
+   * @return the pooled reader of the address, which is added to the pool if it isn't in it.
+   */
+  private ReaderConnection openPooledReader(@NonNull String readerAddress) {
+    ReaderConnection reader = pooledReaders.get(readerAddress);
+    if (reader == null) {
+      reader = new ReaderConnection(context, bluetoothManager, readerProfiles, messenger, "flutter.nuvopoint.com/nfc/acs/reader/" + readerAddress);
+      pooledReaders.put(readerAddress, reader);
+      if (!pooledAddresses.contains(readerAddress)) pooledAddresses.add(readerAddress);
+    }
+
+    return reader;
+  }
+
+  /**
+   * @return the pooled reader of the reader argument, or the reader connected with CONNECT if there's none, or null if
+   *     the reader isn't in the pool, which fails the result.
+   */
+  private ReaderConnection readerOf(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final String readerAddress = call.argument("reader");
+    if (readerAddress == null) return primaryReader;
 
-      for (int c = 0; c < parts.length; c++) {
-        Log.i(TAG, "Decoding: " +  parts[c]);
-        data[c] = android.util.Base64.decode(parts[c], android.util.Base64.DEFAULT);
-        Log.i(TAG, "byte array size " +  data[c].length);
+    final ReaderConnection reader = pooledReaders.get(readerAddress);
+    if (reader == null) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_READER_NOT_CONNECTED, "The reader " + readerAddress + " is not connected", null));
+    }
+
+    return reader;
+  }
+
+  /**
+   * @return the CommandQueue lane of the priority argument, which is 'interactive' unless it's 'bulk'.
+   */
+  private static int parseLane(@NonNull MethodCall call) {
+    return "bulk".equals(call.argument("priority")) ? CommandQueue.LANE_BULK : CommandQueue.LANE_INTERACTIVE;
+  }
+
+  /**
+   * Sets the capacity of the command queue, and what happens to a command that's sent when it's full: 'reject' fails
+   * it, 'dropOldest' fails the oldest command that hasn't started instead, and 'block' holds it, and its result, until
+   * there's room.
+   */
+  private void doConfigureQueue(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ReaderConnection reader = readerOf(call, result);
+    if (reader == null) return;
+
+    final Integer capacity = call.argument("capacity");
+    final String overflow = call.argument("overflow");
+
+    final int policy;
+    if (overflow == null || "reject".equals(overflow)) {
+      policy = CommandQueue.OVERFLOW_REJECT;
+    } else if ("dropOldest".equals(overflow)) {
+      policy = CommandQueue.OVERFLOW_DROP_OLDEST;
+    } else if ("block".equals(overflow)) {
+      policy = CommandQueue.OVERFLOW_BLOCK;
+    } else {
+      MainThreadDispatcher.post(() -> result.error(ERROR_INVALID_QUEUE_CONFIGURATION, "Unknown overflow policy " + overflow, null));
+      return;
+    }
+
+    reader.cardStreamHandler.configureQueue(capacity == null ? CommandQueue.DEFAULT_CAPACITY : capacity, policy, result, ERROR_INVALID_QUEUE_CONFIGURATION);
+  }
+
+  /**
+   * Sets how long the reader gets to answer a command, and a whole request, before the watchdog fails it with
+   * reader_timeout and resets the reader. A timeout of 0 turns it off. If reconnect is set, the reset also reconnects
+   * to the reader.
+   */
+  private void doConfigureTimeouts(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ReaderConnection reader = readerOf(call, result);
+    if (reader == null) return;
+
+    final Number commandTimeoutMs = call.argument("commandTimeoutMs");
+    final Number sequenceTimeoutMs = call.argument("sequenceTimeoutMs");
+    final Boolean reconnect = call.argument("reconnect");
+
+    reader.cardStreamHandler.configureTimeouts(
+        commandTimeoutMs == null ? CardStreamHandler.DEFAULT_COMMAND_TIMEOUT_MS : Math.max(commandTimeoutMs.longValue(), 0),
+        sequenceTimeoutMs == null ? CardStreamHandler.DEFAULT_SEQUENCE_TIMEOUT_MS : Math.max(sequenceTimeoutMs.longValue(), 0),
+        reconnect != null && reconnect ? reader::reconnect : null);
+    MainThreadDispatcher.post(() -> result.success(null));
+  }
+
+  /**
+   * Sets the memory cap of the response cache, 'maxBytes', where 0 turns it off, and how long a response is served from
+   * it, 'ttlMs'. Only the transceive requests with the cache argument set use it.
+   */
+  private void doConfigureResponseCache(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ReaderConnection reader = readerOf(call, result);
+    if (reader == null) return;
+
+    final Number maxBytes = call.argument("maxBytes");
+    final Number ttlMs = call.argument("ttlMs");
+    reader.cardStreamHandler.configureResponseCache(
+        maxBytes == null ? 0 : maxBytes.longValue(),
+        ttlMs == null ? ResponseCache.DEFAULT_TTL_MS : ttlMs.longValue(),
+        result,
+        ERROR_INVALID_CACHE_CONFIGURATION);
+  }
+
+  /**
+   * Sets what the device scan looks for, and how hard it looks, see {@link ScanConfig}. A scan that's running is
+   * restarted with it.
+   */
+  private void doConfigureScan(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ScanConfig config;
+    try {
+      config = ScanConfig.fromArguments(call.arguments());
+    } catch (IllegalArgumentException | ClassCastException e) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_INVALID_SCAN_CONFIGURATION, e.getMessage(), null));
+      return;
+    }
+
+    deviceScanner.configure(config);
+    MainThreadDispatcher.post(() -> result.success(null));
+  }
+
+  /**
+   * Sets what the card stream ('cards') and the stream of tap mode ('cardIds') do with a card seen again within
+   * 'ttlMs' of the last time: 'emit' it, 'suppress' it, or 'annotate' it, which emits a map of the ID and a repeat
+   * count. 'capacity' is the number of recent cards that are remembered.
+   */
+  private void doConfigureRepeats(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final ReaderConnection reader = readerOf(call, result);
+    if (reader == null) return;
+
+    final int cardRepeats = parseRepeatPolicy(call.argument("cards"));
+    final int uidRepeats = parseRepeatPolicy(call.argument("cardIds"));
+    if (cardRepeats < 0 || uidRepeats < 0) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_INVALID_REPEAT_CONFIGURATION, "The repeat policy must be one of 'emit', 'suppress' and 'annotate'", null));
+      return;
+    }
+
+    final Integer capacity = call.argument("capacity");
+    final Number ttlMs = call.argument("ttlMs");
+    reader.cardStreamHandler.configureRepeats(
+        cardRepeats,
+        uidRepeats,
+        capacity == null ? RecentUids.DEFAULT_CAPACITY : capacity,
+        ttlMs == null ? RecentUids.DEFAULT_TTL_MS : ttlMs.longValue(),
+        result,
+        ERROR_INVALID_REPEAT_CONFIGURATION);
+  }
+
+  /**
+   * @return the RecentUids policy of the name, where null means 'emit', or -1 if it's unknown.
+   */
+  private static int parseRepeatPolicy(String name) {
+    if (name == null || "emit".equals(name)) return RecentUids.REPEATS_EMIT;
+    if ("suppress".equals(name)) return RecentUids.REPEATS_SUPPRESS;
+    if ("annotate".equals(name)) return RecentUids.REPEATS_ANNOTATE;
+    return -1;
+  }
+
+  /**
+   * Replaces the bluetooth reader with a SimulatedReader, whose profile is given by the arguments, or goes back to the
+   * bluetooth reader if there are none. It takes effect on the next connect.
+   */
+  private void doSimulate(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    SimulatedReader simulatedReader = null;
+    if (call.arguments instanceof Map) {
+      try {
+        @SuppressWarnings("unchecked") final Map<String, Object> arguments = (Map<String, Object>) call.arguments;
+        simulatedReader = new SimulatedReader(SimulatedReader.Profile.fromArguments(arguments));
+      } catch (IllegalArgumentException e) {
+        MainThreadDispatcher.post(() -> result.error(ERROR_INVALID_SIMULATION, e.getMessage(), null));
+        return;
       }
+    }
 
-      cardStreamHandler.sendMultipleApduWithMergedResult(data);
+    setOfflineReader(simulatedReader);
+    MainThreadDispatcher.post(() -> result.success(null));
+  }
+
+  /**
+   * Replaces the bluetooth reader with a ReplayReader of the trace at the path argument. The trace is replayed on the
+   * next connect.
+   */
+  private void doReplayTrace(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final String path = call.argument("path");
+    final List<Trace.Record> records;
+    try {
+      records = Trace.read(new File(path == null ? "" : path));
+    } catch (IOException e) {
+      MainThreadDispatcher.post(() -> result.error(ERROR_TRACE_FAILED, e.getMessage(), null));
+      return;
     }
 
-    new Handler(Looper.getMainLooper()).post(() -> result.success(null));
+    setOfflineReader(new ReplayReader(records));
+    MainThreadDispatcher.post(() -> result.success(null));
   }
 
-  // Emits status events on listen
-  @Override
-  public void onListen(Object arguments, EventChannel.EventSink events) {
-    statusEvents = events;
-    notifyStatusListeners();
+  private void setOfflineReader(OfflineReader reader) {
+    primaryReader.disconnect();
+    if (offlineReader != null) {
+      offlineReader.close();
+    }
+
+    offlineReader = reader;
+    primaryReader.offlineReader = reader;
   }
 
-  @Override
-  public void onCancel(Object arguments) {
-    statusEvents = null;
+  /**
+   * Starts recording a trace to the path argument, or to a new file in the cache directory, and completes the result
+   * with the path. The recording covers the reader from the next connect.
+   */
+  private void doStartTrace(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+    final String path = call.argument("path");
+    final File file = path != null ? new File(path) : new File(context.getCacheDir(), "acs-trace-" + System.currentTimeMillis() + ".bin");
+
+    if (traceRecorder != null) {
+      traceRecorder.close();
+    }
+
+    try {
+      traceRecorder = new TraceRecorder(file);
+    } catch (IOException e) {
+      traceRecorder = null;
+      MainThreadDispatcher.post(() -> result.error(ERROR_TRACE_FAILED, e.getMessage(), null));
+      return;
+    }
+
+    primaryReader.traceRecorder = traceRecorder;
+    MainThreadDispatcher.post(() -> result.success(file.getAbsolutePath()));
+  }
+
+  /**
+   * Stops the recording, and completes the result with the path of the trace, or null if nothing was recorded.
+   */
+  private void doStopTrace(@NonNull MethodChannel.Result result) {
+    final TraceRecorder recorder = traceRecorder;
+    traceRecorder = null;
+    primaryReader.traceRecorder = null;
+    if (recorder != null) {
+      recorder.close();
+    }
+
+    MainThreadDispatcher.post(() -> result.success(recorder == null ? null : recorder.getFile().getAbsolutePath()));
   }
 
   @Override
@@ -242,7 +749,7 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
         case CONNECT:
           address = pendingMethodCall.argument("address");
           if (address == null) {
-            new Handler(Looper.getMainLooper()).post(() -> {
+            MainThreadDispatcher.post(() -> {
               if (pendingMethodCall != null) {
                 pendingResult.error(ERROR_MISSING_ADDRESS, "The address argument cannot be null", null);
               }
@@ -250,14 +757,14 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
             return;
           }
 
-          if (connectToReader()) {
-            new Handler(Looper.getMainLooper()).post(() -> {
+          if (primaryReader.connect(address)) {
+            MainThreadDispatcher.post(() -> {
               if (pendingMethodCall != null) {
                 pendingResult.success(null);
               }
             });
           } else {
-            new Handler(Looper.getMainLooper()).post(() -> {
+            MainThreadDispatcher.post(() -> {
               if (pendingMethodCall != null) {
                 pendingResult.error(ERROR_DEVICE_NOT_FOUND, "The bluetooth device could not be found", null);
               }
@@ -265,8 +772,8 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
           }
           break;
         case DISCONNECT:
-          disconnectFromReader();
-          new Handler(Looper.getMainLooper()).post(() -> {
+          primaryReader.disconnect();
+          MainThreadDispatcher.post(() -> {
             if (pendingMethodCall != null) {
               pendingResult.success(null);
             }
@@ -275,6 +782,24 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
         case SEND_APDU:
           doSendApdu(pendingMethodCall, pendingResult);
           break;
+        case TRANSMIT_APDU:
+          doTransmitApdu(pendingMethodCall, pendingResult);
+          break;
+        case TRANSCEIVE:
+          doTransceive(pendingMethodCall, pendingResult);
+          break;
+        case RUN_APDU_SCRIPT:
+          doRunApduScript(pendingMethodCall, pendingResult);
+          break;
+        case READ_MIFARE_SECTORS:
+          doReadMifareSectors(pendingMethodCall, pendingResult);
+          break;
+        case READ_NDEF:
+          doReadNdef(pendingMethodCall, pendingResult);
+          break;
+        case CONNECT_READER:
+          doConnectReader(pendingMethodCall, pendingResult);
+          break;
         default:
       }
     }
@@ -284,7 +809,7 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
   protected void afterPermissionsDenied() {
     if (pendingResultComplete) return;
     pendingResultComplete = true;
-    new Handler(Looper.getMainLooper()).post(() -> {
+    MainThreadDispatcher.post(() -> {
       if (pendingResult != null) {
         pendingResult.error(ERROR_NO_PERMISSIONS, "Location permissions are required", null);
       }
@@ -297,9 +822,6 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
     bluetoothManager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
     if (bluetoothManager == null) return;
 
-    setupReaderManager();
-    setupGattCallback();
-
     channel.setMethodCallHandler(this);
     activityBinding.addRequestPermissionsResultListener(this);
 
@@ -307,225 +829,40 @@ public class FlutterNfcAcsPlugin extends BluetoothPermissions implements Flutter
     devicesChannel.setStreamHandler(deviceScanner);
     activityBinding.addRequestPermissionsResultListener(deviceScanner);
 
-    deviceStatusChannel.setStreamHandler(this);
+    primaryReader = new ReaderConnection(context, bluetoothManager, readerProfiles, messenger, "flutter.nuvopoint.com/nfc/acs/device");
+    primaryReader.offlineReader = offlineReader;
+    primaryReader.traceRecorder = traceRecorder;
 
-    cardStreamHandler = new CardStreamHandler();
-    deviceCardChannel.setStreamHandler(cardStreamHandler);
-
-    batteryStreamHandler = new BatteryStreamHandler();
-    deviceBatteryChannel.setStreamHandler(batteryStreamHandler);
+    // The pooled readers are reconnected on resume, like the primary one.
+    for (String readerAddress : new ArrayList<>(pooledAddresses)) {
+      openPooledReader(readerAddress);
+    }
   }
 
   private void dispose() {
-    disconnectFromReader();
+    primaryReader.close();
+    for (ReaderConnection reader : pooledReaders.values()) {
+      reader.close();
+    }
+    pooledReaders.clear();
 
     devicesChannel.setStreamHandler(null);
     channel.setMethodCallHandler(null);
 
-    deviceCardChannel.setStreamHandler(null);
-    cardStreamHandler.dispose();
-
-    deviceBatteryChannel.setStreamHandler(null);
-    batteryStreamHandler.dispose();
-
-    deviceStatusChannel.setStreamHandler(null);
-
     activityBinding.removeRequestPermissionsResultListener(deviceScanner);
     activityBinding.removeRequestPermissionsResultListener(this);
-
-    mGattCallback.setOnConnectionStateChangeListener(null);
-    mGattCallback = null;
-  }
-
-  /**
-   * The reader manager is responsible for setting up all the event streams when a compatible device is detected.
-   */
-  private void setupReaderManager() {
-    // When a reader is detected.
-    mBluetoothReaderManager = new BluetoothReaderManager();
-    mBluetoothReaderManager.setOnReaderDetectionListener(reader -> {
-      if (!(reader instanceof Acr1255uj1Reader)) {
-        new Handler(Looper.getMainLooper()).post(() -> {
-          if (statusEvents != null) {
-            statusEvents.error(ERROR_DEVICE_NOT_SUPPORTED, "Device not supported", null);
-          }
-        });
-        Log.w(TAG, "Reader not supported");
-        disconnectFromReader();
-        return;
-      }
-
-      batteryStreamHandler.setReader(reader);
-      setupAuthenticationListener(reader);
-
-      reader.setOnEnableNotificationCompleteListener((bluetoothReader, result) -> {
-        if (result != BluetoothGatt.GATT_SUCCESS) {
-          Log.w(TAG, "Enabling notifications failed");
-        } else if (!bluetoothReader.authenticate(DEFAULT_1255_MASTER_KEY)) {
-          Log.w(TAG, "Card reader not ready");
-        }
-      });
-
-      // Enables the reader's battery level, card status and response notifications.
-      if (!reader.enableNotification(true)) {
-        Log.w(TAG, "ENABLE NOTIFICATIONS NOT READY!");
-      }
-    });
-  }
-
-  private void setupAuthenticationListener(BluetoothReader reader) {
-    reader.setOnAuthenticationCompleteListener((r, errorCode) -> {
-      if (errorCode == BluetoothReader.ERROR_SUCCESS) {
-        Log.i(TAG, "Authentication successful");
-
-        // When a compatible reader is detected, we hook up the event streams.
-        cardStreamHandler.setReader(r);
-
-        reader.setOnEscapeResponseAvailableListener((re, response, code) -> {
-          re.setOnEscapeResponseAvailableListener(null);
-          if (code == BluetoothReader.ERROR_SUCCESS) {
-            cardStreamHandler.startPolling();
-          } else {
-            Log.w(TAG, "Authentication failed");
-          }
-        });
-
-        final byte[] sleepModeFormat = {(byte) 0xE0, 0x00, 0x00, 0x48, SLEEP_NEVER};
-        reader.transmitEscapeCommand(sleepModeFormat);
-      } else {
-        Log.w(TAG, "Authentication failed");
-      }
-    });
-  }
-
-  /**
-   * Monitors the connection, and if one is established, detects the reader type in the other end.
-   */
-  private void setupGattCallback() {
-    // When a connection to GATT is established.
-    mGattCallback = new BluetoothReaderGattCallback();
-    mGattCallback.setOnConnectionStateChangeListener((gatt, state, newState) -> {
-      if (state != BluetoothGatt.GATT_SUCCESS) {
-        setConnectionState(BluetoothReader.STATE_DISCONNECTED);
-
-        if (newState == BluetoothProfile.STATE_CONNECTED) {
-          Log.w(TAG, "Could not connect to GATT");
-        } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-          Log.w(TAG, "Could not disconnect from GATT");
-        }
-        return;
-      }
-
-      setConnectionState(newState);
-
-      if (newState == BluetoothProfile.STATE_CONNECTED) {
-        mBluetoothReaderManager.detectReader(gatt, mGattCallback);
-      } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-        mBluetoothGatt.disconnect();
-        mBluetoothGatt.close();
-        mBluetoothGatt = null;
-        setConnectionState(BluetoothReader.STATE_DISCONNECTED);
-      }
-    });
   }
 
   @OnLifecycleEvent(Lifecycle.Event.ON_RESUME)
   public void connectIfDisconnected() {
-    if (address != null && mConnectState == BluetoothReader.STATE_DISCONNECTED) {
-      connectToReader();
-    }
-  }
-
-  public boolean connectToReader() {
-    if (address == null) {
-      return false;
-    }
-
-    if (bluetoothManager == null) {
-      setConnectionState(BluetoothReader.STATE_DISCONNECTED);
-      Log.e(TAG, "BluetoothManager was null - cannot connect. The device might not have a bluetooth adapter.");
-      return false;
-    }
-
-    BluetoothAdapter bluetoothAdapter = bluetoothManager.getAdapter();
-    if (!bluetoothAdapter.isEnabled()) {
-      Log.w(TAG, "Bluetooth was not enabled!");
-      return false;
+    if (address != null && primaryReader.isDisconnected()) {
+      primaryReader.connect(address);
     }
 
-    final BluetoothDevice device = bluetoothAdapter.getRemoteDevice(address);
-
-    if (device == null) {
-      Log.w(TAG, "Device not found. Unable to connect.");
-      return false;
-    }
-
-    if (mBluetoothGatt != null) {
-      mBluetoothGatt.disconnect();
-      mBluetoothGatt.close();
-    }
-
-    // Connect to the GATT server.
-    setConnectionState(BluetoothReader.STATE_CONNECTING);
-    mBluetoothGatt = device.connectGatt(context, false, mGattCallback);
-
-    return true;
-  }
-
-  /**
-   * Disconnects the reader and releases resources that are dependant on being connected, which are irrelevant when disconnected.
-   */
-  private void disconnectFromReader() {
-    // Close existing GATT connection
-    if (mBluetoothGatt != null) {
-      mBluetoothGatt.disconnect();
-    }
-
-    setConnectionState(BluetoothReader.STATE_DISCONNECTED);
-  }
-
-  private void setConnectionState(int connectionState) {
-    mConnectState = connectionState;
-    notifyStatusListeners();
-  }
-
-  private void notifyStatusListeners() {
-    // We can't send a status back if no one is listening for it.
-    switch (mConnectState) {
-      case BluetoothReader.STATE_CONNECTED:
-        new Handler(Looper.getMainLooper()).post(() -> {
-          if (statusEvents != null) {
-            statusEvents.success(CONNECTED);
-          }
-        });
-        break;
-      case BluetoothReader.STATE_CONNECTING:
-        new Handler(Looper.getMainLooper()).post(() -> {
-          if (statusEvents != null) {
-            statusEvents.success(CONNECTING);
-          }
-        });
-        break;
-      case BluetoothReader.STATE_DISCONNECTED:
-        new Handler(Looper.getMainLooper()).post(() -> {
-          if (statusEvents != null) {
-            statusEvents.success(DISCONNECTED);
-          }
-        });
-        break;
-      case BluetoothReader.STATE_DISCONNECTING:
-        new Handler(Looper.getMainLooper()).post(() -> {
-          if (statusEvents != null) {
-            statusEvents.success(DISCONNECTING);
-          }
-        });
-        break;
-      default:
-        new Handler(Looper.getMainLooper()).post(() -> {
-          if (statusEvents != null) {
-            statusEvents.success(UNKNOWN_CONNECTION_STATE);
-          }
-        });
+    for (Map.Entry<String, ReaderConnection> reader : pooledReaders.entrySet()) {
+      if (reader.getValue().isDisconnected()) {
+        reader.getValue().connect(reader.getKey());
+      }
     }
   }
 }
@@ -0,0 +1,63 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Delivers work to the main thread through a single shared Handler, instead of a new Handler per event.
+ * <p>
+ * Values that supersede each other, like battery levels and connection states, are coalesced per key, so only the
+ * latest one is delivered in each pass of the main looper.
+ */
+final class MainThreadDispatcher {
+  private static final Handler handler = new Handler(Looper.getMainLooper());
+  // The latest pending runnable per key, in the order the keys were first posted.
+  private static final LinkedHashMap<Object, Runnable> pending = new LinkedHashMap<>();
+  private static boolean flushScheduled = false;
+  private static final Runnable flush = MainThreadDispatcher::flush;
+
+  private MainThreadDispatcher() {
+  }
+
+  static void post(Runnable runnable) {
+    handler.post(runnable);
+  }
+
+  static void postDelayed(Runnable runnable, long delayMillis) {
+    handler.postDelayed(runnable, delayMillis);
+  }
+
+  static void removeCallbacks(Runnable runnable) {
+    handler.removeCallbacks(runnable);
+  }
+
+  /**
+   * Posts a runnable that replaces any runnable still pending for the same key.
+   */
+  static void coalesce(Object key, Runnable runnable) {
+    synchronized (pending) {
+      pending.put(key, runnable);
+      if (!flushScheduled) {
+        flushScheduled = true;
+        handler.post(flush);
+      }
+    }
+  }
+
+  private static void flush() {
+    final List<Runnable> runnables;
+    synchronized (pending) {
+      runnables = new ArrayList<>(pending.values());
+      pending.clear();
+      flushScheduled = false;
+    }
+
+    for (Runnable runnable : runnables) {
+      runnable.run();
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodChannel;
+
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_MIFARE_READ_FAILED;
+
+/**
+ * Reads a range of sectors of a MIFARE Classic card with the reader's pseudo-APDUs, and merges the blocks into one
+ * blob, so a whole card is dumped without a round trip to Dart per block.
+ * <p>
+ * The key is loaded into one of the reader's volatile key slots, which keep it across cards, so it's only loaded again
+ * when the slot holds another key, see {@link KeySlots}. Then each sector is authenticated, and its blocks are read
+ * one at a time, skipping the sector trailer unless it's asked for. If authenticating fails, the key is loaded again
+ * once, in case the slot was overwritten behind the plugin's back, before the read fails.
+ * <p>
+ * The arguments are a map with the following keys:
+ * <ul>
+ *   <li>key: the 6 byte key (required).</li>
+ *   <li>keyType: 'A' or 'B'. Defaults to 'A'.</li>
+ *   <li>keySlot: the key slot of the reader, 0 or 1. Defaults to 0.</li>
+ *   <li>firstSector and lastSector: the sectors to read, 0 to 39. Default to 0 and 15, which is a whole 1K card.</li>
+ *   <li>trailers: whether the sector trailers are read too. Defaults to false.</li>
+ * </ul>
+ */
+class MifareSectorRead extends Transceive {
+  private static final int SW_SUCCESS = 0x9000;
+  private static final int BLOCK_SIZE = 16;
+  private static final int LAST_SECTOR = 39;
+  private static final int STEP_LOAD_KEY = 0;
+  private static final int STEP_AUTHENTICATE = 1;
+  private static final int STEP_READ = 2;
+
+  /**
+   * The keys the reader holds in its volatile key slots, which last until it's disconnected. Only used on the card
+   * reader's worker thread.
+   */
+  static final class KeySlots {
+    private final byte[][] keys = new byte[2][];
+
+    boolean holds(int slot, byte[] key) {
+      return Arrays.equals(keys[slot], key);
+    }
+
+    void set(int slot, byte[] key) {
+      keys[slot] = key;
+    }
+
+    void clear() {
+      Arrays.fill(keys, null);
+    }
+  }
+
+  private final byte[] key;
+  private final int keySlot;
+  private final int firstSector;
+  private final int lastSector;
+  private final boolean trailers;
+  // The commands are patched in place with the block to authenticate or read.
+  private final byte[] loadKey;
+  private final byte[] authenticate;
+  private final byte[] read = {(byte) 0xFF, (byte) 0xB0, 0x00, 0x00, BLOCK_SIZE};
+  private final ByteArrayOutputStream blocks;
+  // Set on the card reader's worker thread before the read is queued.
+  KeySlots keySlots;
+  private int step;
+  private int sector;
+  private int block;
+  private boolean keyReloaded;
+  private String error;
+
+  private MifareSectorRead(int id, byte[] key, int keyType, int keySlot, int firstSector, int lastSector, boolean trailers, MethodChannel.Result result) {
+    super(id, result);
+    this.key = key;
+    this.keySlot = keySlot;
+    this.firstSector = firstSector;
+    this.lastSector = lastSector;
+    this.trailers = trailers;
+
+    loadKey = new byte[5 + key.length];
+    loadKey[0] = (byte) 0xFF;
+    loadKey[1] = (byte) 0x82;
+    loadKey[3] = (byte) keySlot;
+    loadKey[4] = (byte) key.length;
+    System.arraycopy(key, 0, loadKey, 5, key.length);
+    authenticate = new byte[]{(byte) 0xFF, (byte) 0x86, 0x00, 0x00, 0x05, 0x01, 0x00, 0x00, (byte) keyType, (byte) keySlot};
+
+    int size = 0;
+    for (int s = firstSector; s <= lastSector; s++) {
+      size += (trailers ? blockCount(s) : blockCount(s) - 1) * BLOCK_SIZE;
+    }
+    blocks = new ByteArrayOutputStream(size);
+    reset();
+  }
+
+  /**
+   * Parses a read from the method call's arguments.
+   *
+   * @throws IllegalArgumentException if the arguments are malformed.
+   */
+  static MifareSectorRead parse(int id, Map<String, Object> arguments, MethodChannel.Result result) {
+    if (arguments == null) throw new IllegalArgumentException("The arguments can't be null");
+
+    final Object key = arguments.get("key");
+    if (!(key instanceof byte[]) || ((byte[]) key).length != 6) {
+      throw new IllegalArgumentException("The key must be 6 bytes");
+    }
+
+    final Object keyType = arguments.get("keyType");
+    final int keyCode;
+    if (keyType == null || "A".equals(keyType)) {
+      keyCode = 0x60;
+    } else if ("B".equals(keyType)) {
+      keyCode = 0x61;
+    } else {
+      throw new IllegalArgumentException("The key type must be 'A' or 'B', but was " + keyType);
+    }
+
+    final int keySlot = intArgument(arguments, "keySlot", 0);
+    if (keySlot < 0 || keySlot > 1) throw new IllegalArgumentException("The key slot must be 0 or 1, but was " + keySlot);
+
+    final int firstSector = intArgument(arguments, "firstSector", 0);
+    final int lastSector = intArgument(arguments, "lastSector", 15);
+    if (firstSector < 0 || lastSector > LAST_SECTOR || firstSector > lastSector) {
+      throw new IllegalArgumentException("The sectors must be a range within 0.." + LAST_SECTOR + ", but were " + firstSector + ".." + lastSector);
+    }
+
+    return new MifareSectorRead(id, (byte[]) key, keyCode, keySlot, firstSector, lastSector, Boolean.TRUE.equals(arguments.get("trailers")), result);
+  }
+
+  /**
+   * @return true if the command is a LOAD KEY, which overwrites one of the reader's key slots.
+   */
+  static boolean isLoadKey(byte[] command) {
+    return command != null && command.length >= 2 && command[0] == (byte) 0xFF && command[1] == (byte) 0x82;
+  }
+
+  private static int intArgument(Map<String, Object> arguments, String name, int defaultValue) {
+    final Object value = arguments.get(name);
+    return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+  }
+
+  /**
+   * @return the first block of a sector. The sectors from 32 up, which only a 4K card has, are 16 blocks long.
+   */
+  private static int firstBlock(int sector) {
+    return sector < 32 ? sector * 4 : 128 + (sector - 32) * 16;
+  }
+
+  private static int blockCount(int sector) {
+    return sector < 32 ? 4 : 16;
+  }
+
+  @Override
+  byte[] command() {
+    if (step == STEP_LOAD_KEY && keySlots != null && keySlots.holds(keySlot, key)) step = STEP_AUTHENTICATE;
+
+    switch (step) {
+      case STEP_LOAD_KEY:
+        return loadKey;
+      case STEP_AUTHENTICATE:
+        authenticate[7] = (byte) block;
+        return authenticate;
+      default:
+        read[3] = (byte) block;
+        return read;
+    }
+  }
+
+  @Override
+  boolean onResponse(byte[] response) {
+    final int sw = Utils.statusWord(response);
+
+    switch (step) {
+      case STEP_LOAD_KEY:
+        if (sw != SW_SUCCESS) {
+          if (keySlots != null) keySlots.set(keySlot, null);
+          return fail("Loading the key failed with " + Integer.toHexString(sw).toUpperCase());
+        }
+
+        if (keySlots != null) keySlots.set(keySlot, key);
+        step = STEP_AUTHENTICATE;
+        return true;
+      case STEP_AUTHENTICATE:
+        if (sw != SW_SUCCESS) {
+          if (keySlots != null) keySlots.set(keySlot, null);
+          if (!keyReloaded) {
+            keyReloaded = true;
+            step = STEP_LOAD_KEY;
+            return true;
+          }
+
+          return fail("Authenticating sector " + sector + " failed with " + Integer.toHexString(sw).toUpperCase());
+        }
+
+        step = STEP_READ;
+        return true;
+      default:
+        if (sw != SW_SUCCESS || response.length != BLOCK_SIZE + 2) {
+          return fail("Reading block " + block + " failed with " + Integer.toHexString(sw).toUpperCase());
+        }
+
+        blocks.write(response, 0, BLOCK_SIZE);
+        return nextBlock();
+    }
+  }
+
+  /**
+   * Moves on to the next block to read, authenticating its sector first if it's a new one.
+   *
+   * @return true if there's another block.
+   */
+  private boolean nextBlock() {
+    final int trailer = firstBlock(sector) + blockCount(sector) - 1;
+    if (block + 1 < trailer || (trailers && block + 1 == trailer)) {
+      block++;
+      return true;
+    }
+
+    if (sector == lastSector) return false;
+
+    sector++;
+    block = firstBlock(sector);
+    step = STEP_AUTHENTICATE;
+    return true;
+  }
+
+  private boolean fail(String message) {
+    error = message;
+    return false;
+  }
+
+  @Override
+  Object getResult() {
+    return blocks.toByteArray();
+  }
+
+  @Override
+  void reset() {
+    blocks.reset();
+    step = STEP_LOAD_KEY;
+    sector = firstSector;
+    block = firstBlock(firstSector);
+    keyReloaded = false;
+    error = null;
+  }
+
+  @Override
+  boolean canResume() {
+    return true;
+  }
+
+  @Override
+  void resume() {
+    // The requests that went ahead may have authenticated another sector, or loaded another key into the slot.
+    step = STEP_LOAD_KEY;
+  }
+
+  @Override
+  void complete() {
+    if (error != null) {
+      fail(ERROR_MIFARE_READ_FAILED, error);
+      return;
+    }
+
+    super.complete();
+  }
+}
@@ -0,0 +1,216 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.util.Arrays;
+
+import io.flutter.plugin.common.MethodChannel;
+
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_NDEF_READ_FAILED;
+
+/**
+ * Reads the NDEF message of an NFC Forum Type 2 tag, e.g. an NTAG or a MIFARE Ultralight, and completes with its
+ * bytes, which are empty if the tag holds no NDEF message.
+ * <p>
+ * The capability container is read first, together with the first 12 bytes of the user memory, which is all a short
+ * URL needs. If the NDEF TLV goes on, and the tag may be probed, it's asked for its version, and an NTAG or
+ * Ultralight EV1 is read with FAST_READ, wrapped in the reader's direct transmit pseudo-APDU, in as few exchanges as the
+ * reader's buffer allows. Other tags are read 4 pages at a time. Only the user memory up to the end of the NDEF TLV is
+ * read.
+ * <p>
+ * Unless the caller decides, the tag is only probed if its ATR says it's of the Ultralight family, which NTAGs report
+ * too. A MIFARE Ultralight C is never probed, as it doesn't know GET_VERSION, and needs to be tapped again after it's
+ * asked.
+ */
+class NdefTagRead extends Transceive {
+  private static final int SW_SUCCESS = 0x9000;
+  private static final int PAGE_SIZE = 4;
+  private static final int FIRST_DATA_PAGE = 4;
+  // A FAST_READ response has to fit the reader's buffer.
+  private static final int MAX_FAST_READ_PAGES = 60;
+  private static final int STEP_READ_CC = 0;
+  private static final int STEP_GET_VERSION = 1;
+  private static final int STEP_READ = 2;
+  private static final int TLV_NULL = 0x00;
+  private static final int TLV_NDEF = 0x03;
+  private static final int TLV_TERMINATOR = 0xFE;
+  // READ BINARY of the capability container in page 3, and the 3 pages after it.
+  private static final byte[] READ_CC = {(byte) 0xFF, (byte) 0xB0, 0x00, 0x03, 0x10};
+  // GET_VERSION, wrapped in a direct transmit.
+  private static final byte[] GET_VERSION = {(byte) 0xFF, 0x00, 0x00, 0x00, 0x01, 0x60};
+
+  // Whether the tag is probed for FAST_READ: true or false if the caller chose, or null to decide from the card type.
+  private final Boolean probeFastRead;
+  // The type of the tag, see CardTypes, which is set on the card reader's worker thread before the read is sent.
+  String cardType = CardTypes.UNKNOWN;
+  private boolean fastRead;
+  private int step;
+  // The user memory from page 4, of which length bytes are read, and needed bytes hold the NDEF TLV.
+  private byte[] memory;
+  private int length;
+  private int needed;
+  private byte[] ndef;
+  private String error;
+
+  NdefTagRead(int id, Boolean probeFastRead, MethodChannel.Result result) {
+    super(id, result);
+    this.probeFastRead = probeFastRead;
+    reset();
+  }
+
+  @Override
+  byte[] command() {
+    switch (step) {
+      case STEP_READ_CC:
+        return READ_CC;
+      case STEP_GET_VERSION:
+        return GET_VERSION;
+      default:
+        final int page = FIRST_DATA_PAGE + length / PAGE_SIZE;
+        if (!fastRead) return new byte[]{(byte) 0xFF, (byte) 0xB0, 0x00, (byte) page, 0x10};
+
+        final int lastPage = Math.min(page + MAX_FAST_READ_PAGES, FIRST_DATA_PAGE + (needed + PAGE_SIZE - 1) / PAGE_SIZE) - 1;
+        return new byte[]{(byte) 0xFF, 0x00, 0x00, 0x00, 0x03, 0x3A, (byte) page, (byte) lastPage};
+    }
+  }
+
+  @Override
+  boolean onResponse(byte[] response) {
+    final int sw = Utils.statusWord(response);
+    final int dataLength = Math.max(response.length - 2, 0);
+
+    switch (step) {
+      case STEP_READ_CC:
+        if (sw != SW_SUCCESS || dataLength < 16) {
+          return fail("Reading the capability container failed with " + Integer.toHexString(sw).toUpperCase());
+        }
+        if ((response[0] & 0xFF) != 0xE1) return fail("The tag isn't NDEF formatted");
+
+        memory = new byte[(response[2] & 0xFF) * 8];
+        return onRead(response, PAGE_SIZE, dataLength - PAGE_SIZE);
+      case STEP_GET_VERSION:
+        // The vendor is NXP, and the product type an NTAG or an Ultralight EV1.
+        fastRead = sw == SW_SUCCESS && dataLength == 8 && response[1] == 0x04 && (response[2] == 0x04 || response[2] == 0x03);
+        step = STEP_READ;
+        return true;
+      default:
+        if (sw != SW_SUCCESS || dataLength == 0) {
+          return fail("Reading page " + (FIRST_DATA_PAGE + length / PAGE_SIZE) + " failed with " + Integer.toHexString(sw).toUpperCase());
+        }
+
+        return onRead(response, 0, dataLength);
+    }
+  }
+
+  /**
+   * Appends user memory that was read, and works out whether more of it is needed.
+   *
+   * @return true if there's more to read.
+   */
+  private boolean onRead(byte[] response, int offset, int count) {
+    final int copied = Math.min(count, memory.length - length);
+    System.arraycopy(response, offset, memory, length, copied);
+    length += copied;
+
+    needed = parseTlvs();
+    if (needed < 0) return false;
+    if (needed > memory.length || length == memory.length) {
+      return fail("The NDEF message runs past the end of the user memory");
+    }
+
+    if (step == STEP_READ_CC) {
+      step = probesFastRead() ? STEP_GET_VERSION : STEP_READ;
+    }
+
+    return true;
+  }
+
+  /**
+   * @return true if the card type is needed to decide whether to probe the tag, see {@link #cardType}.
+   */
+  boolean needsCardType() {
+    return !Boolean.FALSE.equals(probeFastRead);
+  }
+
+  private boolean probesFastRead() {
+    if (CardTypes.MIFARE_ULTRALIGHT_C.equals(cardType)) return false;
+
+    return probeFastRead != null ? probeFastRead : CardTypes.MIFARE_ULTRALIGHT.equals(cardType);
+  }
+
+  /**
+   * Walks the TLVs in the user memory that was read, and sets the NDEF message once it's in.
+   *
+   * @return the bytes of user memory needed to get to the NDEF message, or -1 if it's done.
+   */
+  private int parseTlvs() {
+    int offset = 0;
+    while (offset < memory.length) {
+      if (offset >= length) return offset + 1;
+
+      final int type = memory[offset] & 0xFF;
+      if (type == TLV_NULL) {
+        offset++;
+        continue;
+      }
+      if (type == TLV_TERMINATOR) break;
+
+      // The length is 1 byte, or 0xFF followed by 2 bytes.
+      if (offset + 1 >= length) return offset + 4;
+      int valueOffset = offset + 2;
+      int valueLength = memory[offset + 1] & 0xFF;
+      if (valueLength == 0xFF) {
+        if (offset + 3 >= length) return offset + 4;
+        valueOffset = offset + 4;
+        valueLength = ((memory[offset + 2] & 0xFF) << 8) | (memory[offset + 3] & 0xFF);
+      }
+
+      if (type == TLV_NDEF) {
+        if (valueOffset + valueLength > length) return valueOffset + valueLength;
+
+        ndef = Arrays.copyOfRange(memory, valueOffset, valueOffset + valueLength);
+        return -1;
+      }
+
+      offset = valueOffset + valueLength;
+    }
+
+    ndef = new byte[0];
+    return -1;
+  }
+
+  private boolean fail(String message) {
+    error = message;
+    return false;
+  }
+
+  @Override
+  Object getResult() {
+    return ndef;
+  }
+
+  @Override
+  void reset() {
+    step = STEP_READ_CC;
+    fastRead = false;
+    memory = null;
+    length = 0;
+    needed = 0;
+    ndef = null;
+    error = null;
+  }
+
+  @Override
+  boolean canResume() {
+    // The pages are read by address, which doesn't depend on anything the requests that went ahead could change.
+    return true;
+  }
+
+  @Override
+  void complete() {
+    if (error != null) {
+      fail(ERROR_NDEF_READ_FAILED, error);
+      return;
+    }
+
+    super.complete();
+  }
+}
@@ -0,0 +1,31 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+/**
+ * A CardReader that isn't backed by a bluetooth device, so it simulates the GATT connection itself.
+ */
+interface OfflineReader extends CardReader {
+  /**
+   * Simulates the GATT connection. The listener is called with the BluetoothReader.STATE_* the connection moves to.
+   */
+  void connect(OnConnectionStateChangeListener listener);
+
+  void disconnect();
+
+  /**
+   * Releases the reader's thread. The reader can't be used afterwards.
+   */
+  void close();
+
+  /**
+   * Sets what's called, on the reader's thread, when the reader can't go on, e.g. a replay that diverged from its trace.
+   */
+  void setOnFailureListener(OnFailureListener listener);
+
+  interface OnConnectionStateChangeListener {
+    void onConnectionStateChange(int state);
+  }
+
+  interface OnFailureListener {
+    void onFailure(String message);
+  }
+}
@@ -0,0 +1,455 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.acs.bluetooth.Acr1255uj1Reader;
+import com.acs.bluetooth.BluetoothReader;
+import com.acs.bluetooth.BluetoothReaderGattCallback;
+import com.acs.bluetooth.BluetoothReaderManager;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+
+import static android.content.ContentValues.TAG;
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_DEVICE_NOT_SUPPORTED;
+import static com.nuvopoint.flutter_nfc_acs.FlutterNfcAcsPlugin.ERROR_OFFLINE_READER_FAILED;
+
+/**
+ * The connection to one reader: its GATT connection, its detection and authentication, and the handlers of its card,
+ * battery and status streams, which are registered on the event channels under the channel name given, e.g.
+ * {@code <name>/card}. Each connection has its own CardStreamHandler, and so its own session, command queue and worker
+ * thread, so several readers are used at once without waiting on each other.
+ * <p>
+ * A reader that was brought up before is brought up faster, see {@link ReaderProfiles}: the sleep mode it holds
+ * already isn't written again, so it starts polling as soon as it's authenticated, and if its link drops without a
+ * disconnect, it's reconnected with autoConnect, which connects as soon as it's back in range, without the app
+ * having to resume first.
+ * <p>
+ * Only used on the main thread, apart from the callbacks of the GATT connection.
+ */
+class ReaderConnection implements EventChannel.StreamHandler {
+  // The status stream's events
+  private static final String CONNECTED = "CONNECTED";
+  private static final String CONNECTING = "CONNECTING";
+  private static final String DISCONNECTED = "DISCONNECTED";
+  private static final String DISCONNECTING = "DISCONNECTING";
+  private static final String UNKNOWN_CONNECTION_STATE = "UNKNOWN_CONNECTION_STATE";
+
+  // Sleep mode options
+  /*private static final byte SLEEP_60_SEC = 0x00;
+  private static final byte SLEEP_90_SEC = 0x01;
+  private static final byte SLEEP_120_SEC = 0x02;
+  private static final byte SLEEP_180_SEC = 0x03;*/
+  private static final byte SLEEP_NEVER = 0x04;
+
+  // "ACR1255U-J1 Auth" in text;
+  private static final byte[] DEFAULT_1255_MASTER_KEY = {(byte) 65, 67, 82, 49, 50, 53, 53, 85, 45, 74, 49, 32, 65, 117, 116, 104};
+
+  final CardStreamHandler cardStreamHandler = new CardStreamHandler();
+  private final BatteryStreamHandler batteryStreamHandler = new BatteryStreamHandler();
+  private final Context context;
+  private final BluetoothManager bluetoothManager;
+  private final ReaderProfiles profiles;
+  private final EventChannel statusChannel;
+  private final EventChannel cardChannel;
+  private final EventChannel cardUidChannel;
+  private final EventChannel cardInfoChannel;
+  private final EventChannel batteryChannel;
+  private final BluetoothReaderManager readerManager = new BluetoothReaderManager();
+  private BluetoothReaderGattCallback gattCallback = new BluetoothReaderGattCallback();
+  private BluetoothGatt gatt;
+  private EventChannel.EventSink statusEvents;
+  private int connectState = BluetoothReader.STATE_DISCONNECTED;
+  private String address;
+  // Set by disconnect, so a link that's dropped on purpose isn't reconnected.
+  private volatile boolean disconnectRequested = false;
+  // When the current connection started, in elapsed realtime milliseconds.
+  private long connectStartedAt;
+
+  // Replaces the bluetooth reader when set, see SIMULATE and REPLAY_TRACE.
+  OfflineReader offlineReader;
+  // Records the interactions with the reader when set, see START_TRACE.
+  TraceRecorder traceRecorder;
+
+  ReaderConnection(@NonNull Context context, @NonNull BluetoothManager bluetoothManager, @NonNull ReaderProfiles profiles, @NonNull BinaryMessenger messenger, @NonNull String channelName) {
+    this.context = context;
+    this.bluetoothManager = bluetoothManager;
+    this.profiles = profiles;
+
+    statusChannel = new EventChannel(messenger, channelName + "/status");
+    cardChannel = new EventChannel(messenger, channelName + "/card");
+    cardUidChannel = new EventChannel(messenger, channelName + "/card/uid");
+    cardInfoChannel = new EventChannel(messenger, channelName + "/card/info");
+    batteryChannel = new EventChannel(messenger, channelName + "/battery");
+
+    statusChannel.setStreamHandler(this);
+    cardChannel.setStreamHandler(cardStreamHandler);
+    cardUidChannel.setStreamHandler(cardStreamHandler.uidStreamHandler);
+    cardInfoChannel.setStreamHandler(cardStreamHandler.cardInfoStreamHandler);
+    batteryChannel.setStreamHandler(batteryStreamHandler);
+
+    setupReaderManager();
+    setupGattCallback();
+  }
+
+  boolean isDisconnected() {
+    return connectState == BluetoothReader.STATE_DISCONNECTED;
+  }
+
+  /**
+   * Disconnects the reader, and unregisters its stream handlers. The connection can't be used afterwards.
+   */
+  void close() {
+    disconnect();
+
+    statusChannel.setStreamHandler(null);
+    cardChannel.setStreamHandler(null);
+    cardUidChannel.setStreamHandler(null);
+    cardInfoChannel.setStreamHandler(null);
+    batteryChannel.setStreamHandler(null);
+    cardStreamHandler.close();
+    batteryStreamHandler.dispose();
+
+    gattCallback.setOnConnectionStateChangeListener(null);
+    gattCallback = null;
+  }
+
+  // Emits status events on listen
+  @Override
+  public void onListen(Object arguments, EventChannel.EventSink events) {
+    statusEvents = events;
+    notifyStatusListeners();
+  }
+
+  @Override
+  public void onCancel(Object arguments) {
+    statusEvents = null;
+  }
+
+  /**
+   * The reader manager is responsible for setting up all the event streams when a compatible device is detected.
+   */
+  private void setupReaderManager() {
+    // When a reader is detected.
+    readerManager.setOnReaderDetectionListener(reader -> {
+      if (!(reader instanceof Acr1255uj1Reader)) {
+        MainThreadDispatcher.post(() -> {
+          if (statusEvents != null) {
+            statusEvents.error(ERROR_DEVICE_NOT_SUPPORTED, "Device not supported", null);
+          }
+        });
+        Log.w(TAG, "Reader not supported");
+        disconnect();
+        return;
+      }
+
+      onReaderDetected(new AcsCardReader((Acr1255uj1Reader) reader));
+    });
+  }
+
+  /**
+   * Hooks up a detected reader, and starts its authentication by enabling its notifications.
+   */
+  private void onReaderDetected(CardReader reader) {
+    if (traceRecorder != null) {
+      // Recorded once the reader is detected, so a replay includes the time of the service discovery.
+      traceRecorder.record(Trace.GATT_STATE, BluetoothReader.STATE_CONNECTED, null);
+      reader = new RecordingCardReader(reader, traceRecorder);
+    }
+
+    batteryStreamHandler.setReader(reader);
+    setupAuthenticationListener(reader);
+
+    reader.setOnEnableNotificationCompleteListener((cardReader, result) -> {
+      if (result != BluetoothGatt.GATT_SUCCESS) {
+        Log.w(TAG, "Enabling notifications failed");
+      } else if (!cardReader.authenticate(DEFAULT_1255_MASTER_KEY)) {
+        Log.w(TAG, "Card reader not ready");
+      }
+    });
+
+    // Enables the reader's battery level, card status and response notifications.
+    if (!reader.enableNotification(true)) {
+      Log.w(TAG, "ENABLE NOTIFICATIONS NOT READY!");
+    }
+  }
+
+  private void setupAuthenticationListener(CardReader reader) {
+    reader.setOnAuthenticationCompleteListener((r, errorCode) -> {
+      if (errorCode == BluetoothReader.ERROR_SUCCESS) {
+        Log.i(TAG, "Authentication successful");
+
+        // When a compatible reader is detected, we hook up the event streams.
+        cardStreamHandler.setReader(r);
+
+        final ReaderProfiles.Profile profile = getProfile();
+        if (profile != null && profile.sleepMode == SLEEP_NEVER) {
+          onReady(profile);
+          return;
+        }
+
+        reader.setOnEscapeResponseAvailableListener((re, response, code) -> {
+          re.setOnEscapeResponseAvailableListener(null);
+          if (code == BluetoothReader.ERROR_SUCCESS) {
+            if (profile != null) profile.sleepMode = SLEEP_NEVER;
+            onReady(profile);
+          } else {
+            Log.w(TAG, "Authentication failed");
+          }
+        });
+
+        final byte[] sleepModeFormat = {(byte) 0xE0, 0x00, 0x00, 0x48, SLEEP_NEVER};
+        reader.transmitEscapeCommand(sleepModeFormat);
+      } else {
+        Log.w(TAG, "Authentication failed");
+        final String readerAddress = address;
+        if (readerAddress != null) profiles.forget(readerAddress);
+      }
+    });
+  }
+
+  /**
+   * Starts polling for cards, and remembers the reader as known.
+   */
+  private void onReady(ReaderProfiles.Profile profile) {
+    cardStreamHandler.startPolling();
+
+    final long readyMs = SystemClock.elapsedRealtime() - connectStartedAt;
+    Log.i(TAG, "The reader was ready " + readyMs + "ms after connecting");
+    if (profile != null) profile.known = true;
+
+    // The setup is done, so the link goes back to the interval that spares the reader's battery.
+    final BluetoothGatt currentGatt = gatt;
+    if (currentGatt != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+      currentGatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_BALANCED);
+    }
+  }
+
+  /**
+   * @return the profile of the reader, or null for an offline reader or while a trace is recorded, which always run
+   *     every step, so a replay of a trace sees the same commands as the recording.
+   */
+  private ReaderProfiles.Profile getProfile() {
+    final String readerAddress = address;
+    return offlineReader == null && traceRecorder == null && readerAddress != null ? profiles.get(readerAddress) : null;
+  }
+
+  /**
+   * Monitors the connection, and if one is established, detects the reader type in the other end.
+   */
+  private void setupGattCallback() {
+    // When a connection to GATT is established.
+    gattCallback.setOnConnectionStateChangeListener((gatt, state, newState) -> {
+      if (traceRecorder != null && (state != BluetoothGatt.GATT_SUCCESS || newState == BluetoothProfile.STATE_DISCONNECTED)) {
+        traceRecorder.record(Trace.GATT_STATE, BluetoothReader.STATE_DISCONNECTED, null);
+      }
+
+      if (state != BluetoothGatt.GATT_SUCCESS) {
+        setConnectionState(BluetoothReader.STATE_DISCONNECTED);
+
+        if (newState == BluetoothProfile.STATE_CONNECTED) {
+          Log.w(TAG, "Could not connect to GATT");
+        } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+          // The link was lost, e.g. the reader went out of range.
+          Log.w(TAG, "Could not disconnect from GATT");
+          MainThreadDispatcher.post(() -> onLinkLost(gatt));
+        }
+        return;
+      }
+
+      setConnectionState(newState);
+
+      if (newState == BluetoothProfile.STATE_CONNECTED) {
+        // A short connection interval speeds up the service discovery and the authentication.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+          gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+        }
+        // The model isn't cached per address, as the SDK only binds a reader to a GATT connection in a package private
+        // constructor, which detectReader calls once it has discovered the services the reader needs. So each connect
+        // detects the reader again.
+        readerManager.detectReader(gatt, gattCallback);
+      } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+        MainThreadDispatcher.post(() -> onLinkLost(gatt));
+      }
+    });
+  }
+
+  /**
+   * Releases the GATT connection that was lost, and waits for a known reader to come back, unless it was disconnected
+   * on purpose.
+   */
+  private void onLinkLost(BluetoothGatt lostGatt) {
+    // A connection that was replaced already was closed by connect.
+    if (lostGatt != gatt || gatt == null) return;
+
+    gatt.disconnect();
+    gatt.close();
+    gatt = null;
+    setConnectionState(BluetoothReader.STATE_DISCONNECTED);
+
+    final ReaderProfiles.Profile profile = getProfile();
+    if (disconnectRequested || gattCallback == null || profile == null || !profile.known) return;
+
+    final BluetoothAdapter bluetoothAdapter = bluetoothManager.getAdapter();
+    if (!bluetoothAdapter.isEnabled()) return;
+
+    Log.i(TAG, "Waiting for the reader to come back");
+    connectStartedAt = SystemClock.elapsedRealtime();
+    setConnectionState(BluetoothReader.STATE_CONNECTING);
+    gatt = connectGatt(bluetoothAdapter.getRemoteDevice(address), true);
+  }
+
+  /**
+   * Connects over LE, as a dual mode device could otherwise be connected over BR/EDR, which the reader doesn't serve.
+   * An autoConnect connection doesn't time out, and connects whenever the reader advertises, which is slower than a
+   * direct connection to a reader that's in range.
+   */
+  private BluetoothGatt connectGatt(BluetoothDevice device, boolean autoConnect) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      return device.connectGatt(context, autoConnect, gattCallback, BluetoothDevice.TRANSPORT_LE);
+    }
+
+    return device.connectGatt(context, autoConnect, gattCallback);
+  }
+
+  /**
+   * Connects to the reader at the address, which is kept in memory in case of life cycle events.
+   *
+   * @return false if the reader could not be found.
+   */
+  boolean connect(String address) {
+    this.address = address;
+    return connect();
+  }
+
+  private boolean connect() {
+    if (address == null) {
+      return false;
+    }
+
+    disconnectRequested = false;
+    connectStartedAt = SystemClock.elapsedRealtime();
+
+    if (traceRecorder != null) {
+      traceRecorder.record(Trace.GATT_STATE, BluetoothReader.STATE_CONNECTING, null);
+    }
+
+    if (offlineReader != null) {
+      setConnectionState(BluetoothReader.STATE_CONNECTING);
+      final OfflineReader reader = offlineReader;
+      reader.setOnFailureListener(message -> {
+        cardStreamHandler.onReaderFailed(ERROR_OFFLINE_READER_FAILED, message);
+        MainThreadDispatcher.post(() -> {
+          if (statusEvents != null) {
+            statusEvents.error(ERROR_OFFLINE_READER_FAILED, message, null);
+          }
+          disconnect();
+        });
+      });
+      reader.connect(state -> {
+        if (state == BluetoothReader.STATE_CONNECTED) {
+          setConnectionState(state);
+          onReaderDetected(reader);
+        } else if (state == BluetoothReader.STATE_DISCONNECTED) {
+          if (traceRecorder != null) traceRecorder.record(Trace.GATT_STATE, state, null);
+          setConnectionState(state);
+        }
+      });
+      return true;
+    }
+
+    BluetoothAdapter bluetoothAdapter = bluetoothManager.getAdapter();
+    if (!bluetoothAdapter.isEnabled()) {
+      Log.w(TAG, "Bluetooth was not enabled!");
+      return false;
+    }
+
+    final BluetoothDevice device = bluetoothAdapter.getRemoteDevice(address);
+
+    if (device == null) {
+      Log.w(TAG, "Device not found. Unable to connect.");
+      return false;
+    }
+
+    if (gatt != null) {
+      gatt.disconnect();
+      gatt.close();
+    }
+
+    // Connect to the GATT server.
+    setConnectionState(BluetoothReader.STATE_CONNECTING);
+    gatt = connectGatt(device, false);
+
+    return true;
+  }
+
+  /**
+   * Drops the connection to the reader, and connects to it again, after the watchdog reset a reader that hung.
+   */
+  void reconnect() {
+    Log.i(TAG, "Reconnecting to the reader");
+    disconnect();
+    connect();
+  }
+
+  /**
+   * Disconnects the reader and releases resources that are dependant on being connected, which are irrelevant when disconnected.
+   */
+  void disconnect() {
+    disconnectRequested = true;
+
+    // Close existing GATT connection
+    if (gatt != null) {
+      gatt.disconnect();
+    }
+
+    if (offlineReader != null) {
+      offlineReader.disconnect();
+    }
+
+    setConnectionState(BluetoothReader.STATE_DISCONNECTED);
+  }
+
+  private void setConnectionState(int connectionState) {
+    connectState = connectionState;
+    notifyStatusListeners();
+  }
+
+  private void notifyStatusListeners() {
+    final String status;
+    switch (connectState) {
+      case BluetoothReader.STATE_CONNECTED:
+        status = CONNECTED;
+        break;
+      case BluetoothReader.STATE_CONNECTING:
+        status = CONNECTING;
+        break;
+      case BluetoothReader.STATE_DISCONNECTED:
+        status = DISCONNECTED;
+        break;
+      case BluetoothReader.STATE_DISCONNECTING:
+        status = DISCONNECTING;
+        break;
+      default:
+        status = UNKNOWN_CONNECTION_STATE;
+    }
+
+    // Only the latest status matters, so a burst of changes is delivered as one event.
+    MainThreadDispatcher.coalesce(this, () -> {
+      // We can't send a status back if no one is listening for it.
+      if (statusEvents != null) {
+        statusEvents.success(status);
+      }
+    });
+  }
+}
@@ -0,0 +1,44 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.util.HashMap;
+
+/**
+ * What the plugin learned about the readers it connected to, by their address, so a known reader is brought up with
+ * fewer steps: it's reconnected with autoConnect when its link drops, and the configuration it holds already isn't
+ * written again.
+ * <p>
+ * The profiles only live as long as the app's process, so a reader's configuration is written at least once per run,
+ * in case it was changed by another app or reset in between.
+ * <p>
+ * Shared by the connections, whose callbacks write the profile of their reader.
+ */
+class ReaderProfiles {
+  static final class Profile {
+    // Set once the reader was detected and authenticated.
+    volatile boolean known;
+    // The sleep mode written to the reader, or -1 if none was.
+    volatile int sleepMode = -1;
+  }
+
+  private final HashMap<String, Profile> profiles = new HashMap<>();
+
+  /**
+   * @return the profile of the address, which is created if the reader isn't known.
+   */
+  synchronized Profile get(String address) {
+    Profile profile = profiles.get(address);
+    if (profile == null) {
+      profile = new Profile();
+      profiles.put(address, profile);
+    }
+
+    return profile;
+  }
+
+  /**
+   * Forgets a reader, e.g. after it failed to authenticate, so its next connection runs every step.
+   */
+  synchronized void forget(String address) {
+    profiles.remove(address);
+  }
+}
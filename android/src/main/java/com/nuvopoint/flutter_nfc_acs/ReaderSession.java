@@ -0,0 +1,99 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of the card on the reader, and of the exchange with it.
+ * <p>
+ * The state and a card generation, which changes with every tap, are packed into one long, so each transition is a
+ * single compare-and-set that fails if the card changed in the meantime. A response is only accepted while a command
+ * sent to the current card is awaiting one, so a late response can't be merged into another card's result.
+ */
+class ReaderSession {
+  // No card on the reader.
+  static final int IDLE = 0;
+  // A card is on the reader, and no command is outstanding.
+  static final int CARD_PRESENT = 1;
+  // A command is being handed to the reader.
+  static final int TRANSMITTING = 2;
+  // A command was sent, and its response hasn't arrived yet.
+  static final int AWAITING_RESPONSE = 3;
+
+  private static final long STATE_MASK = 0xFF;
+
+  private final AtomicLong session = new AtomicLong(IDLE);
+
+  /**
+   * Starts a new session for a card that was just detected, abandoning whatever was outstanding on the previous one.
+   *
+   * @return the state the previous session was in.
+   */
+  int onCardPresent() {
+    while (true) {
+      final long current = session.get();
+      if (session.compareAndSet(current, pack(generation(current) + 1, CARD_PRESENT))) return state(current);
+    }
+  }
+
+  /**
+   * Ends the session of the card that was removed.
+   *
+   * @return the state the session was in.
+   */
+  int onCardAbsent() {
+    while (true) {
+      final long current = session.get();
+      if (session.compareAndSet(current, pack(generation(current), IDLE))) return state(current);
+    }
+  }
+
+  /**
+   * Claims the card for a command.
+   *
+   * @return the card generation to pass to {@link #sent(long)}, or -1 if there's no card, or a command is outstanding.
+   */
+  long beginTransmit() {
+    final long current = session.get();
+    if (state(current) != CARD_PRESENT) return -1;
+
+    final long generation = generation(current);
+    return session.compareAndSet(current, pack(generation, TRANSMITTING)) ? generation : -1;
+  }
+
+  /**
+   * Marks the command claimed by {@link #beginTransmit()} as sent, unless the card changed in the meantime.
+   */
+  boolean sent(long generation) {
+    return session.compareAndSet(pack(generation, TRANSMITTING), pack(generation, AWAITING_RESPONSE));
+  }
+
+  /**
+   * Accepts a response, which frees the card for the next command.
+   *
+   * @return false if no command to the current card was awaiting a response, in which case it must be dropped.
+   */
+  boolean onResponse() {
+    final long current = session.get();
+    return state(current) == AWAITING_RESPONSE && session.compareAndSet(current, pack(generation(current), CARD_PRESENT));
+  }
+
+  int getState() {
+    return state(session.get());
+  }
+
+  boolean isCardPresent() {
+    return getState() != IDLE;
+  }
+
+  private static long pack(long generation, int state) {
+    return (generation << 8) | state;
+  }
+
+  private static long generation(long session) {
+    return session >>> 8;
+  }
+
+  private static int state(long session) {
+    return (int) (session & STATE_MASK);
+  }
+}
@@ -0,0 +1,78 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+/**
+ * The card IDs seen within a time window, so a card lingering at the edge of the field, which the reader reports over
+ * and over, can be told apart from a new tap.
+ * <p>
+ * The IDs are matched against the response they arrived in, so a lookup doesn't allocate. The cache holds a few dozen
+ * cards at most, so it's a flat scan over parallel arrays, and when it's full the least recently seen card is evicted.
+ * <p>
+ * Not thread safe, it's only used on the card reader's worker thread.
+ */
+class RecentUids {
+  // What a card stream does with a card that was seen within the window.
+  static final int REPEATS_EMIT = 0;
+  static final int REPEATS_SUPPRESS = 1;
+  static final int REPEATS_ANNOTATE = 2;
+  static final int DEFAULT_CAPACITY = 32;
+  static final long DEFAULT_TTL_MS = 3000;
+
+  private byte[][] uids = new byte[DEFAULT_CAPACITY][];
+  private long[] lastSeen = new long[DEFAULT_CAPACITY];
+  private int[] repeats = new int[DEFAULT_CAPACITY];
+  private int size = 0;
+  private long ttlMs = DEFAULT_TTL_MS;
+
+  /**
+   * Changes the size and window of the cache, which forgets the cards seen so far.
+   */
+  void configure(int capacity, long ttlMs) {
+    if (capacity < 1) throw new IllegalArgumentException("The capacity must be at least 1, but was " + capacity);
+    if (ttlMs < 0) throw new IllegalArgumentException("The time to live can't be negative, but was " + ttlMs);
+
+    uids = new byte[capacity][];
+    lastSeen = new long[capacity];
+    repeats = new int[capacity];
+    size = 0;
+    this.ttlMs = ttlMs;
+  }
+
+  /**
+   * Records a card ID, which is the first length bytes of the response.
+   *
+   * @param now the current time, in elapsed realtime milliseconds.
+   * @return how many times in a row the card was seen before, within the window of each other, or 0 if it's new.
+   */
+  int onSeen(byte[] response, int length, long now) {
+    int oldest = 0;
+    for (int i = 0; i < size; i++) {
+      if (matches(uids[i], response, length)) {
+        final boolean repeat = now - lastSeen[i] <= ttlMs;
+        repeats[i] = repeat ? repeats[i] + 1 : 0;
+        lastSeen[i] = now;
+        return repeats[i];
+      }
+
+      if (lastSeen[i] < lastSeen[oldest]) oldest = i;
+    }
+
+    final int slot = size < uids.length ? size++ : oldest;
+    if (uids[slot] == null || uids[slot].length != length) {
+      uids[slot] = new byte[length];
+    }
+    System.arraycopy(response, 0, uids[slot], 0, length);
+    lastSeen[slot] = now;
+    repeats[slot] = 0;
+    return 0;
+  }
+
+  private static boolean matches(byte[] uid, byte[] response, int length) {
+    if (uid.length != length) return false;
+
+    for (int i = 0; i < length; i++) {
+      if (uid[i] != response[i]) return false;
+    }
+
+    return true;
+  }
+}
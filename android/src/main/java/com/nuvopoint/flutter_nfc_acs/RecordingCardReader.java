@@ -0,0 +1,124 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.util.Arrays;
+
+/**
+ * Wraps a CardReader, and records the calls made to it and the events it emits.
+ */
+class RecordingCardReader implements CardReader {
+  // CLA, INS, P1, P2 and Lc of a LOAD KEY, which the key follows.
+  private static final int LOAD_KEY_HEADER_LENGTH = 5;
+  private final CardReader reader;
+  private final TraceRecorder recorder;
+
+  RecordingCardReader(CardReader reader, TraceRecorder recorder) {
+    this.reader = reader;
+    this.recorder = recorder;
+  }
+
+  @Override
+  public boolean authenticate(byte[] masterKey) {
+    // The key itself is left out of the trace.
+    recorder.record(Trace.AUTHENTICATE, 0, null);
+    return reader.authenticate(masterKey);
+  }
+
+  @Override
+  public boolean enableNotification(boolean enable) {
+    recorder.record(Trace.ENABLE_NOTIFICATION, enable ? 1 : 0, null);
+    return reader.enableNotification(enable);
+  }
+
+  @Override
+  public boolean transmitApdu(byte[] apdu) {
+    recorder.record(Trace.APDU_SENT, 0, redact(apdu));
+    return reader.transmitApdu(apdu);
+  }
+
+  /**
+   * @return the command with the key of a LOAD KEY zeroed, like the master key, or the command itself otherwise.
+   */
+  private static byte[] redact(byte[] apdu) {
+    if (apdu == null || apdu.length <= LOAD_KEY_HEADER_LENGTH || apdu[0] != (byte) 0xFF || apdu[1] != (byte) 0x82) return apdu;
+
+    final byte[] redacted = Arrays.copyOf(apdu, apdu.length);
+    Arrays.fill(redacted, LOAD_KEY_HEADER_LENGTH, redacted.length, (byte) 0);
+    return redacted;
+  }
+
+  @Override
+  public boolean transmitEscapeCommand(byte[] command) {
+    recorder.record(Trace.ESCAPE_SENT, 0, command);
+    return reader.transmitEscapeCommand(command);
+  }
+
+  @Override
+  public boolean powerOnCard() {
+    recorder.record(Trace.POWER_ON_CARD, 0, null);
+    return reader.powerOnCard();
+  }
+
+  @Override
+  public void setOnAuthenticationCompleteListener(OnAuthenticationCompleteListener listener) {
+    reader.setOnAuthenticationCompleteListener(listener == null ? null : (r, errorCode) -> {
+      recorder.record(Trace.AUTHENTICATION_COMPLETE, errorCode, null);
+      listener.onAuthenticationComplete(this, errorCode);
+    });
+  }
+
+  @Override
+  public void setOnEnableNotificationCompleteListener(OnEnableNotificationCompleteListener listener) {
+    reader.setOnEnableNotificationCompleteListener(listener == null ? null : (r, result) -> {
+      recorder.record(Trace.NOTIFICATION_ENABLED, result, null);
+      listener.onEnableNotificationComplete(this, result);
+    });
+  }
+
+  @Override
+  public void setOnResponseApduAvailableListener(OnResponseApduAvailableListener listener) {
+    reader.setOnResponseApduAvailableListener(listener == null ? null : (r, response, errorCode) -> {
+      recorder.record(Trace.APDU_RESPONSE, errorCode, response);
+      listener.onResponseApduAvailable(this, response, errorCode);
+    });
+  }
+
+  @Override
+  public void setOnEscapeResponseAvailableListener(OnEscapeResponseAvailableListener listener) {
+    reader.setOnEscapeResponseAvailableListener(listener == null ? null : (r, response, errorCode) -> {
+      recorder.record(Trace.ESCAPE_RESPONSE, errorCode, response);
+      listener.onEscapeResponseAvailable(this, response, errorCode);
+    });
+  }
+
+  @Override
+  public void setOnCardStatusChangeListener(OnCardStatusChangeListener listener) {
+    reader.setOnCardStatusChangeListener(listener == null ? null : (r, cardStatus) -> {
+      recorder.record(Trace.CARD_STATUS, cardStatus, null);
+      listener.onCardStatusChange(this, cardStatus);
+    });
+  }
+
+  @Override
+  public void setOnAtrAvailableListener(OnAtrAvailableListener listener) {
+    reader.setOnAtrAvailableListener(listener == null ? null : (r, atr, errorCode) -> {
+      recorder.record(Trace.ATR, errorCode, atr);
+      listener.onAtrAvailable(this, atr, errorCode);
+    });
+  }
+
+  @Override
+  public void setOnBatteryLevelChangeListener(OnBatteryLevelChangeListener listener) {
+    reader.setOnBatteryLevelChangeListener(listener == null ? null : (r, batteryLevel) -> {
+      recorder.record(Trace.BATTERY_LEVEL, batteryLevel, null);
+      listener.onBatteryLevelChange(this, batteryLevel);
+    });
+  }
+
+  @Override
+  public void setOnBatteryLevelAvailableListener(OnBatteryLevelAvailableListener listener) {
+    reader.setOnBatteryLevelAvailableListener(listener == null ? null : (r, batteryLevel, status) -> {
+      recorder.record(Trace.BATTERY_LEVEL, batteryLevel, new byte[]{(byte) status});
+      listener.onBatteryLevelAvailable(this, batteryLevel, status);
+    });
+  }
+}
@@ -0,0 +1,235 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+
+import static android.content.ContentValues.TAG;
+
+/**
+ * An OfflineReader that replays a recorded trace through the plugin, with the timing of the recording.
+ * <p>
+ * The replay waits for the plugin to make each call that was recorded, and emits the events that follow it after the
+ * same delay as in the recording. The reader's latencies are reproduced exactly, while the plugin's own time is
+ * measured live.
+ */
+class ReplayReader implements OfflineReader {
+  private final List<Trace.Record> records;
+  private final HandlerThread thread;
+  private final Handler handler;
+  private final Runnable advance = this::advance;
+
+  private OnConnectionStateChangeListener onConnectionStateChange;
+  private OnFailureListener onFailure;
+  private OnAuthenticationCompleteListener onAuthenticationComplete;
+  private OnEnableNotificationCompleteListener onEnableNotificationComplete;
+  private OnResponseApduAvailableListener onResponseApduAvailable;
+  private OnEscapeResponseAvailableListener onEscapeResponseAvailable;
+  private OnCardStatusChangeListener onCardStatusChange;
+  private OnAtrAvailableListener onAtrAvailable;
+  private OnBatteryLevelChangeListener onBatteryLevelChange;
+  private OnBatteryLevelAvailableListener onBatteryLevelAvailable;
+
+  // Only touched on the replay thread.
+  private int cursor = 0;
+  // The trace time of the last record that was replayed, and the time it was replayed at.
+  private long anchorTraceNanos = 0;
+  private long anchorNanos = 0;
+
+  ReplayReader(List<Trace.Record> records) {
+    this.records = records;
+    this.thread = new HandlerThread("ReplayReader");
+    this.thread.start();
+    this.handler = new Handler(thread.getLooper());
+  }
+
+  @Override
+  public void connect(OnConnectionStateChangeListener listener) {
+    handler.post(() -> {
+      onConnectionStateChange = listener;
+      cursor = 0;
+      anchorTraceNanos = 0;
+      anchorNanos = SystemClock.elapsedRealtimeNanos();
+      advance();
+    });
+  }
+
+  @Override
+  public void disconnect() {
+    handler.removeCallbacksAndMessages(null);
+    handler.post(() -> cursor = records.size());
+  }
+
+  @Override
+  public void close() {
+    handler.removeCallbacksAndMessages(null);
+    thread.quitSafely();
+  }
+
+  /**
+   * Emits the events up to the next recorded call, each at its recorded delay.
+   */
+  private void advance() {
+    handler.removeCallbacks(advance);
+
+    while (cursor < records.size()) {
+      final Trace.Record record = records.get(cursor);
+      if (Trace.isCall(record.type)) return;
+
+      final long delayNanos = (record.timeNanos - anchorTraceNanos) - (SystemClock.elapsedRealtimeNanos() - anchorNanos);
+      if (delayNanos > 0) {
+        handler.postDelayed(advance, Math.max(1, delayNanos / 1_000_000));
+        return;
+      }
+
+      cursor++;
+      anchor(record);
+      emit(record);
+    }
+
+    Log.i(TAG, "The trace has been replayed");
+  }
+
+  /**
+   * Matches a call from the plugin with the next recorded call, and replays what followed it.
+   */
+  private void onCall(int type) {
+    handler.post(() -> {
+      if (cursor >= records.size()) return;
+
+      final Trace.Record record = records.get(cursor);
+      if (record.type != type) {
+        // Nothing that follows in the trace answers this call, so the replay stops rather than stalls.
+        final String message = "The replay diverged from the trace: expected record type " + record.type + " but got " + type;
+        Log.w(TAG, message);
+        handler.removeCallbacks(advance);
+        cursor = records.size();
+        if (onFailure != null) onFailure.onFailure(message);
+        return;
+      }
+
+      cursor++;
+      anchor(record);
+      advance();
+    });
+  }
+
+  private void anchor(Trace.Record record) {
+    anchorTraceNanos = record.timeNanos;
+    anchorNanos = SystemClock.elapsedRealtimeNanos();
+  }
+
+  private void emit(Trace.Record record) {
+    switch (record.type) {
+      case Trace.GATT_STATE:
+        if (onConnectionStateChange != null) onConnectionStateChange.onConnectionStateChange(record.code);
+        break;
+      case Trace.NOTIFICATION_ENABLED:
+        if (onEnableNotificationComplete != null) onEnableNotificationComplete.onEnableNotificationComplete(this, record.code);
+        break;
+      case Trace.AUTHENTICATION_COMPLETE:
+        if (onAuthenticationComplete != null) onAuthenticationComplete.onAuthenticationComplete(this, record.code);
+        break;
+      case Trace.APDU_RESPONSE:
+        if (onResponseApduAvailable != null) onResponseApduAvailable.onResponseApduAvailable(this, record.payload, record.code);
+        break;
+      case Trace.ESCAPE_RESPONSE:
+        if (onEscapeResponseAvailable != null) onEscapeResponseAvailable.onEscapeResponseAvailable(this, record.payload, record.code);
+        break;
+      case Trace.CARD_STATUS:
+        if (onCardStatusChange != null) onCardStatusChange.onCardStatusChange(this, record.code);
+        break;
+      case Trace.ATR:
+        if (onAtrAvailable != null) onAtrAvailable.onAtrAvailable(this, record.payload, record.code);
+        break;
+      case Trace.BATTERY_LEVEL:
+        // A level with a status was reported as available, rather than as a change.
+        if (record.payload != null && record.payload.length == 1) {
+          if (onBatteryLevelAvailable != null) onBatteryLevelAvailable.onBatteryLevelAvailable(this, record.code, record.payload[0] & 0xFF);
+        } else if (onBatteryLevelChange != null) {
+          onBatteryLevelChange.onBatteryLevelChange(this, record.code);
+        }
+        break;
+      default:
+        Log.w(TAG, "Skipping unknown trace record type " + record.type);
+    }
+  }
+
+  @Override
+  public boolean authenticate(byte[] masterKey) {
+    onCall(Trace.AUTHENTICATE);
+    return true;
+  }
+
+  @Override
+  public boolean enableNotification(boolean enable) {
+    onCall(Trace.ENABLE_NOTIFICATION);
+    return true;
+  }
+
+  @Override
+  public boolean transmitApdu(byte[] apdu) {
+    onCall(Trace.APDU_SENT);
+    return true;
+  }
+
+  @Override
+  public boolean transmitEscapeCommand(byte[] command) {
+    onCall(Trace.ESCAPE_SENT);
+    return true;
+  }
+
+  @Override
+  public boolean powerOnCard() {
+    onCall(Trace.POWER_ON_CARD);
+    return true;
+  }
+
+  @Override
+  public void setOnFailureListener(OnFailureListener listener) {
+    onFailure = listener;
+  }
+
+  @Override
+  public void setOnAuthenticationCompleteListener(OnAuthenticationCompleteListener listener) {
+    onAuthenticationComplete = listener;
+  }
+
+  @Override
+  public void setOnEnableNotificationCompleteListener(OnEnableNotificationCompleteListener listener) {
+    onEnableNotificationComplete = listener;
+  }
+
+  @Override
+  public void setOnResponseApduAvailableListener(OnResponseApduAvailableListener listener) {
+    onResponseApduAvailable = listener;
+  }
+
+  @Override
+  public void setOnEscapeResponseAvailableListener(OnEscapeResponseAvailableListener listener) {
+    onEscapeResponseAvailable = listener;
+  }
+
+  @Override
+  public void setOnCardStatusChangeListener(OnCardStatusChangeListener listener) {
+    onCardStatusChange = listener;
+  }
+
+  @Override
+  public void setOnAtrAvailableListener(OnAtrAvailableListener listener) {
+    onAtrAvailable = listener;
+  }
+
+  @Override
+  public void setOnBatteryLevelChangeListener(OnBatteryLevelChangeListener listener) {
+    onBatteryLevelChange = listener;
+  }
+
+  @Override
+  public void setOnBatteryLevelAvailableListener(OnBatteryLevelAvailableListener listener) {
+    onBatteryLevelAvailable = listener;
+  }
+}
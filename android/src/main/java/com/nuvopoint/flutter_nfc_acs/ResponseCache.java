@@ -0,0 +1,140 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The responses to commands that read static data, e.g. SELECT AID or a card's version, keyed by the card ID and the
+ * command, so the same card tapped again can be answered without a round trip to the reader. A command is keyed
+ * together with the commands before it in its request, as a READ BINARY answers differently depending on the file
+ * that was selected.
+ * <p>
+ * The entries are evicted in least recently used order once the responses take up more than the memory cap, and an
+ * entry older than the time to live counts as a miss. A cap of 0 turns the cache off.
+ * <p>
+ * Not thread safe, it's only used on the card reader's worker thread.
+ */
+class ResponseCache {
+  static final long DEFAULT_TTL_MS = 10 * 60 * 1000;
+
+  private static final class Entry {
+    final byte[] response;
+    final long storedAt;
+
+    Entry(byte[] response, long storedAt) {
+      this.response = response;
+      this.storedAt = storedAt;
+    }
+  }
+
+  // The keys are the card ID and the commands up to the one answered, each after its length, so IDs of 4, 7 and 10
+  // bytes, or commands split differently, can't run together. ByteBuffer compares them by content.
+  private final LinkedHashMap<ByteBuffer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long maxBytes = 0;
+  private long ttlMs = DEFAULT_TTL_MS;
+  private long bytes = 0;
+  private long hits = 0;
+  private long misses = 0;
+
+  void configure(long maxBytes, long ttlMs) {
+    if (maxBytes < 0) throw new IllegalArgumentException("The memory cap can't be negative, but was " + maxBytes);
+    if (ttlMs < 0) throw new IllegalArgumentException("The time to live can't be negative, but was " + ttlMs);
+
+    this.maxBytes = maxBytes;
+    this.ttlMs = ttlMs;
+    evict();
+  }
+
+  boolean isEnabled() {
+    return maxBytes > 0;
+  }
+
+  /**
+   * Looks up the responses to all of the commands. They're only useful together, as answering some of them from the
+   * cache would skip the state changes, like a SELECT, that the others depend on.
+   *
+   * @return the responses, including their status words, or null if any of them is missing or stale.
+   */
+  byte[][] getAll(byte[] uid, byte[][] commands, long now) {
+    final byte[][] responses = new byte[commands.length][];
+    for (int i = 0; i < commands.length; i++) {
+      final ByteBuffer key = key(uid, commands, i);
+      final Entry entry = entries.get(key);
+      if (entry == null || now - entry.storedAt > ttlMs) {
+        if (entry != null) remove(key);
+        misses++;
+        return null;
+      }
+
+      responses[i] = entry.response;
+    }
+
+    hits++;
+    return responses;
+  }
+
+  /**
+   * Stores a successful response to one of a request's commands.
+   *
+   * @param index the command that was answered, which is keyed together with the ones before it.
+   */
+  void put(byte[] uid, byte[][] commands, int index, byte[] response, long now) {
+    if (!isEnabled() || Utils.statusWord(response) != 0x9000) return;
+
+    final ByteBuffer key = key(uid, commands, index);
+    remove(key);
+    entries.put(key, new Entry(response, now));
+    bytes += size(key, response);
+    evict();
+  }
+
+  private void remove(ByteBuffer key) {
+    final Entry removed = entries.remove(key);
+    if (removed != null) bytes -= size(key, removed.response);
+  }
+
+  private void evict() {
+    final Iterator<Map.Entry<ByteBuffer, Entry>> it = entries.entrySet().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      final Map.Entry<ByteBuffer, Entry> eldest = it.next();
+      bytes -= size(eldest.getKey(), eldest.getValue().response);
+      it.remove();
+    }
+  }
+
+  private static long size(ByteBuffer key, byte[] response) {
+    return key.capacity() + response.length;
+  }
+
+  private static ByteBuffer key(byte[] uid, byte[][] commands, int index) {
+    int length = 1 + uid.length;
+    for (int i = 0; i <= index; i++) {
+      length += 2 + commands[i].length;
+    }
+
+    final ByteBuffer key = ByteBuffer.allocate(length);
+    key.put((byte) uid.length).put(uid);
+    for (int i = 0; i <= index; i++) {
+      key.putShort((short) commands[i].length).put(commands[i]);
+    }
+
+    key.flip();
+    return key;
+  }
+
+  /**
+   * @return the size and hit rate of the cache, for the RESPONSE_CACHE_STATS method.
+   */
+  Map<String, Object> getStats() {
+    final HashMap<String, Object> stats = new HashMap<>();
+    stats.put("entries", entries.size());
+    stats.put("bytes", bytes);
+    stats.put("maxBytes", maxBytes);
+    stats.put("hits", hits);
+    stats.put("misses", misses);
+    return stats;
+  }
+}
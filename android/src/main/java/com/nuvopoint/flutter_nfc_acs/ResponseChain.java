@@ -0,0 +1,85 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Follows up on the status words that ask for another command, so the full response is reassembled natively:
+ * <ul>
+ *   <li>61xx: xx more bytes are waiting, which are fetched with GET RESPONSE.</li>
+ *   <li>6Cxx: the Le was wrong, so the command is sent again with Le set to xx.</li>
+ * </ul>
+ */
+class ResponseChain {
+  private static final byte INS_GET_RESPONSE = (byte) 0xC0;
+  // Guards against cards that keep asking for more.
+  private static final int MAX_FOLLOW_UPS = 64;
+
+  private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+  private byte[] command;
+  private byte[] response;
+  private int followUps = 0;
+
+  /**
+   * Starts a new chain for a command that is about to be sent.
+   */
+  void start(byte[] command) {
+    this.command = command;
+    this.response = null;
+    this.followUps = 0;
+    data.reset();
+  }
+
+  /**
+   * Handles a response to the last command sent.
+   *
+   * @return the command to send next, or null if the response is complete, and available from {@link #getResponse()}.
+   */
+  byte[] onResponse(byte[] response) {
+    final int sw = Utils.statusWord(response);
+
+    if (command != null && followUps < MAX_FOLLOW_UPS) {
+      if ((sw & 0xFF00) == 0x6100) {
+        data.write(response, 0, response.length - 2);
+        followUps++;
+        command = new byte[]{(byte) (command[0] & 0x03), INS_GET_RESPONSE, 0x00, 0x00, (byte) sw};
+        return command;
+      }
+
+      if ((sw & 0xFF00) == 0x6C00) {
+        followUps++;
+        command = withLe(command, (byte) sw);
+        return command;
+      }
+    }
+
+    if (data.size() == 0) {
+      this.response = response;
+    } else {
+      data.write(response, 0, response.length);
+      this.response = data.toByteArray();
+      data.reset();
+    }
+
+    command = null;
+    return null;
+  }
+
+  /**
+   * @return the reassembled response, including the final status word.
+   */
+  byte[] getResponse() {
+    return response;
+  }
+
+  /**
+   * @return a copy of a short APDU with its Le set, or added if the command had none.
+   */
+  static byte[] withLe(byte[] command, byte le) {
+    // Case 1 (header only), and case 3 (header, Lc and data) have no Le.
+    final boolean hasLe = command.length == 5 || (command.length > 5 && command.length != 5 + (command[4] & 0xFF));
+    final byte[] result = Arrays.copyOf(command, hasLe ? command.length : command.length + 1);
+    result[result.length - 1] = le;
+    return result;
+  }
+}
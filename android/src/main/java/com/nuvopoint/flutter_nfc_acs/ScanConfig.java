@@ -0,0 +1,195 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import android.bluetooth.le.ScanSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * What DeviceScanner looks for, and how hard it looks.
+ * <p>
+ * The service UUIDs and the exact names are handed to the bluetooth controller as ScanFilters, so the adverts of other
+ * devices don't wake the app up at all. The controller passes a device that matches any one of the filters, and
+ * {@link #matches(String, List)} checks the adverts the same way. A ScanFilter can't match a prefix, so the name prefix
+ * is matched on the scan thread, before an advert is recorded, and a device must have it on top of matching a filter.
+ * <p>
+ * The arguments are a map with the following keys, all optional:
+ * <ul>
+ *   <li>serviceUuids: the services a device may advertise, where one of them, or one of the names, must match.</li>
+ *   <li>names: the names a device may have.</li>
+ *   <li>namePrefix: what a device's name must start with. Defaults to 'ACR', the prefix of the ACS readers, and null
+ *   matches any name.</li>
+ *   <li>scanMode: 'lowPower', 'balanced' or 'lowLatency'. Defaults to 'lowLatency'.</li>
+ *   <li>reportDelayMs: how long the controller batches the results for, where it can. Defaults to 0, which reports
+ *   each advert right away.</li>
+ *   <li>matchMode: 'aggressive' or 'sticky', which needs a stronger signal to report a device. Defaults to
+ *   'aggressive'.</li>
+ *   <li>policy: 'oneShot', which scans for durationMs and stops, 'dutyCycle', which scans for scanWindowMs every
+ *   scanIntervalMs until the stream is cancelled, or 'opportunistic', which only gets the results of other apps' scans,
+ *   and never turns the radio on itself. Defaults to 'oneShot'.</li>
+ *   <li>durationMs: how long a one shot scan lasts. Defaults to 10 seconds.</li>
+ *   <li>scanWindowMs and scanIntervalMs: the duty cycle. Default to 2 seconds every 10 seconds.</li>
+ *   <li>deviceTtlMs: how long a device goes unseen before it's lost. Defaults to 5 seconds, or twice the scan interval
+ *   of a duty cycle, so a device isn't lost while the radio is off.</li>
+ * </ul>
+ * Below Lollipop, the service UUIDs are only filtered by the platform when no names are given, the rest is matched on
+ * the scan thread, and the scan settings are ignored. Below
+ * Marshmallow, an opportunistic scan is a continuous scan in low power mode.
+ */
+class ScanConfig {
+  static final int POLICY_ONE_SHOT = 0;
+  static final int POLICY_DUTY_CYCLE = 1;
+  static final int POLICY_OPPORTUNISTIC = 2;
+  // The ACR1255U-J1 and the other ACS readers advertise names like 'ACR1255U-J1-006512'.
+  static final String DEFAULT_NAME_PREFIX = "ACR";
+  // The UUID the 16 and 32 bit UUIDs of an advert are short for.
+  private static final long BASE_UUID_LSB = 0x800000805F9B34FBL;
+  private static final long BASE_UUID_MSB = 0x0000000000001000L;
+
+  final List<UUID> serviceUuids = new ArrayList<>();
+  final List<String> names = new ArrayList<>();
+  String namePrefix = DEFAULT_NAME_PREFIX;
+  int scanMode = ScanSettings.SCAN_MODE_LOW_LATENCY;
+  long reportDelayMs = 0;
+  int matchMode = ScanSettings.MATCH_MODE_AGGRESSIVE;
+  int policy = POLICY_ONE_SHOT;
+  long durationMs = 10000;
+  long scanWindowMs = 2000;
+  long scanIntervalMs = 10000;
+  long deviceTtlMs = 5000;
+
+  /**
+   * @throws IllegalArgumentException if an argument is malformed.
+   */
+  @SuppressWarnings("unchecked")
+  static ScanConfig fromArguments(Map<String, Object> arguments) {
+    final ScanConfig config = new ScanConfig();
+    if (arguments == null) return config;
+
+    final List<String> serviceUuids = (List<String>) arguments.get("serviceUuids");
+    if (serviceUuids != null) {
+      for (String uuid : serviceUuids) config.serviceUuids.add(UUID.fromString(uuid));
+    }
+
+    final List<String> names = (List<String>) arguments.get("names");
+    if (names != null) config.names.addAll(names);
+
+    if (arguments.containsKey("namePrefix")) config.namePrefix = (String) arguments.get("namePrefix");
+
+    final Object scanMode = arguments.get("scanMode");
+    if ("lowPower".equals(scanMode)) {
+      config.scanMode = ScanSettings.SCAN_MODE_LOW_POWER;
+    } else if ("balanced".equals(scanMode)) {
+      config.scanMode = ScanSettings.SCAN_MODE_BALANCED;
+    } else if (scanMode != null && !"lowLatency".equals(scanMode)) {
+      throw new IllegalArgumentException("Unknown scan mode " + scanMode);
+    }
+
+    final Number reportDelayMs = (Number) arguments.get("reportDelayMs");
+    if (reportDelayMs != null) {
+      if (reportDelayMs.longValue() < 0) throw new IllegalArgumentException("The report delay can't be negative, but was " + reportDelayMs);
+      config.reportDelayMs = reportDelayMs.longValue();
+    }
+
+    final Object matchMode = arguments.get("matchMode");
+    if ("sticky".equals(matchMode)) {
+      config.matchMode = ScanSettings.MATCH_MODE_STICKY;
+    } else if (matchMode != null && !"aggressive".equals(matchMode)) {
+      throw new IllegalArgumentException("Unknown match mode " + matchMode);
+    }
+
+    final Object policy = arguments.get("policy");
+    if ("dutyCycle".equals(policy)) {
+      config.policy = POLICY_DUTY_CYCLE;
+    } else if ("opportunistic".equals(policy)) {
+      config.policy = POLICY_OPPORTUNISTIC;
+    } else if (policy != null && !"oneShot".equals(policy)) {
+      throw new IllegalArgumentException("Unknown scan policy " + policy);
+    }
+
+    config.durationMs = positiveArgument(arguments, "durationMs", config.durationMs);
+    config.scanWindowMs = positiveArgument(arguments, "scanWindowMs", config.scanWindowMs);
+    config.scanIntervalMs = positiveArgument(arguments, "scanIntervalMs", config.scanIntervalMs);
+    if (config.scanWindowMs > config.scanIntervalMs) {
+      throw new IllegalArgumentException("The scan window can't be longer than the scan interval, but was " + config.scanWindowMs + " of " + config.scanIntervalMs);
+    }
+
+    final long defaultTtlMs = config.policy == POLICY_DUTY_CYCLE ? Math.max(config.deviceTtlMs, 2 * config.scanIntervalMs) : config.deviceTtlMs;
+    config.deviceTtlMs = positiveArgument(arguments, "deviceTtlMs", defaultTtlMs);
+    if (config.policy == POLICY_DUTY_CYCLE && config.deviceTtlMs <= config.scanIntervalMs - config.scanWindowMs) {
+      throw new IllegalArgumentException("The device TTL must be longer than the time the radio is off, but was " + config.deviceTtlMs);
+    }
+
+    return config;
+  }
+
+  private static long positiveArgument(Map<String, Object> arguments, String name, long defaultValue) {
+    final Number value = (Number) arguments.get(name);
+    if (value == null) return defaultValue;
+    if (value.longValue() <= 0) throw new IllegalArgumentException("The " + name + " argument must be positive, but was " + value);
+
+    return value.longValue();
+  }
+
+  /**
+   * @param advertised the service UUIDs in the device's advert.
+   * @return true if the device matches one of the service UUIDs or names, if any are given, and has the name prefix.
+   */
+  boolean matches(String name, List<UUID> advertised) {
+    if ((!serviceUuids.isEmpty() || !names.isEmpty()) && !names.contains(name) && !advertisesAny(advertised)) return false;
+    return namePrefix == null || (name != null && name.startsWith(namePrefix));
+  }
+
+  private boolean advertisesAny(List<UUID> advertised) {
+    for (UUID uuid : advertised) {
+      if (serviceUuids.contains(uuid)) return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Reads the service UUIDs from the raw advert of a scan below Lollipop, which has no ScanRecord to parse it.
+   */
+  static List<UUID> parseServiceUuids(byte[] advertisingData) {
+    final List<UUID> uuids = new ArrayList<>();
+    if (advertisingData == null) return uuids;
+
+    // The advert is a list of structures of a length, a type, and the data.
+    int offset = 0;
+    while (offset + 1 < advertisingData.length) {
+      final int length = advertisingData[offset] & 0xFF;
+      if (length == 0 || offset + 1 + length > advertisingData.length) break;
+
+      final int type = advertisingData[offset + 1] & 0xFF;
+      final int size = type == 0x02 || type == 0x03 ? 2 : type == 0x04 || type == 0x05 ? 4 : type == 0x06 || type == 0x07 ? 16 : 0;
+      for (int i = offset + 2; size > 0 && i + size <= offset + 1 + length; i += size) {
+        uuids.add(uuid(advertisingData, i, size));
+      }
+
+      offset += 1 + length;
+    }
+
+    return uuids;
+  }
+
+  /**
+   * @return the little endian UUID at the offset, where one of 2 or 4 bytes is short for one of the base UUID.
+   */
+  private static UUID uuid(byte[] data, int offset, int size) {
+    long msb = 0;
+    long lsb = 0;
+    for (int i = size - 1; i >= 0; i--) {
+      final long value = data[offset + i] & 0xFF;
+      if (size == 16 && i < 8) {
+        lsb = (lsb << 8) | value;
+      } else {
+        msb = (msb << 8) | value;
+      }
+    }
+
+    return size == 16 ? new UUID(msb, lsb) : new UUID((msb << 32) | BASE_UUID_MSB, BASE_UUID_LSB);
+  }
+}
@@ -0,0 +1,39 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+/**
+ * Keeps the scan starts within the platform's limit. From Nougat, an app that starts a scan more than 5 times in 30
+ * seconds has the next scans silently dropped, without an error to its callback, so a duty cycle that's too tight would
+ * stop finding devices. The starts are tracked in a ring of their times, and a start that would go over the limit is
+ * told how long to wait.
+ * <p>
+ * Not thread safe, it's only used on the main thread.
+ */
+class ScanStartLimiter {
+  static final int MAX_STARTS = 5;
+  // The platform's window, and a margin for the clocks not lining up.
+  static final long WINDOW_MS = 30000 + 500;
+
+  private final long[] starts = new long[MAX_STARTS];
+  private int next = 0;
+  private int count = 0;
+
+  /**
+   * @param now the current time, in elapsed realtime milliseconds.
+   * @return how long until a scan may be started, or 0 if it may be started now.
+   */
+  long delayUntilAllowed(long now) {
+    if (count < MAX_STARTS) return 0;
+
+    // The ring is full, so the next slot holds the oldest start.
+    return Math.max(starts[next] + WINDOW_MS - now, 0);
+  }
+
+  /**
+   * Records a scan start.
+   */
+  void onStarted(long now) {
+    starts[next] = now;
+    next = (next + 1) % MAX_STARTS;
+    if (count < MAX_STARTS) count++;
+  }
+}
@@ -0,0 +1,381 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import android.bluetooth.BluetoothGatt;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import com.acs.bluetooth.BluetoothReader;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A CardReader that simulates an ACR1255U-J1 and the cards tapped on it, so the plugin can be exercised and load
+ * tested without hardware. The latencies of the GATT connection, the reader's commands and the card exchanges are
+ * taken from a Profile.
+ * <p>
+ * Like the ACS SDK, the listeners are called on a background thread, and the reader handles one APDU at a time.
+ */
+class SimulatedReader implements OfflineReader {
+  private static final byte[] AUTO_POLLING_START = {(byte) 0xE0, 0x00, 0x00, 0x40, 0x01};
+  private static final byte[] AUTO_POLLING_STOP = {(byte) 0xE0, 0x00, 0x00, 0x40, 0x00};
+  private static final byte[] SW_SUCCESS = {(byte) 0x90, 0x00};
+  // The ATRs of a MIFARE Classic 1K, which has a 4 byte UID, and of a MIFARE Ultralight, which has a 7 byte one.
+  private static final byte[] ATR_MIFARE_CLASSIC_1K = {0x3B, (byte) 0x8F, (byte) 0x80, 0x01, (byte) 0x80, 0x4F, 0x0C, (byte) 0xA0, 0x00, 0x00, 0x03, 0x06, 0x03, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x6A};
+  private static final byte[] ATR_MIFARE_ULTRALIGHT = {0x3B, (byte) 0x8F, (byte) 0x80, 0x01, (byte) 0x80, 0x4F, 0x0C, (byte) 0xA0, 0x00, 0x00, 0x03, 0x06, 0x03, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x68};
+
+  private final Profile profile;
+  private final Random random;
+  private final HandlerThread thread;
+  private final Handler handler;
+
+  private OnAuthenticationCompleteListener onAuthenticationComplete;
+  private OnEnableNotificationCompleteListener onEnableNotificationComplete;
+  private OnResponseApduAvailableListener onResponseApduAvailable;
+  private OnEscapeResponseAvailableListener onEscapeResponseAvailable;
+  private OnCardStatusChangeListener onCardStatusChange;
+  private OnAtrAvailableListener onAtrAvailable;
+  private OnBatteryLevelChangeListener onBatteryLevelChange;
+  private OnBatteryLevelAvailableListener onBatteryLevelAvailable;
+
+  // Only touched on the simulation thread, except the flags that guard the commands.
+  private volatile boolean connected = false;
+  private volatile boolean notificationsEnabled = false;
+  private volatile boolean authenticated = false;
+  private boolean polling = false;
+  private byte[] cardUid;
+  private int taps = 0;
+  // The reader handles one exchange at a time, so each one is queued behind the previous.
+  private long busyUntil = 0;
+
+  SimulatedReader(Profile profile) {
+    this.profile = profile;
+    this.random = new Random(profile.seed);
+    this.thread = new HandlerThread("SimulatedReader");
+    this.thread.start();
+    this.handler = new Handler(thread.getLooper());
+  }
+
+  @Override
+  public void connect(OnConnectionStateChangeListener listener) {
+    handler.postDelayed(() -> {
+      connected = true;
+      listener.onConnectionStateChange(BluetoothReader.STATE_CONNECTED);
+    }, latency(profile.connectMs, profile.connectJitterMs));
+  }
+
+  @Override
+  public void disconnect() {
+    handler.removeCallbacksAndMessages(null);
+    handler.post(() -> {
+      connected = false;
+      notificationsEnabled = false;
+      authenticated = false;
+      polling = false;
+      cardUid = null;
+      busyUntil = 0;
+    });
+  }
+
+  @Override
+  public void close() {
+    handler.removeCallbacksAndMessages(null);
+    thread.quitSafely();
+  }
+
+  @Override
+  public boolean enableNotification(boolean enable) {
+    if (!connected) return false;
+
+    handler.postDelayed(() -> {
+      notificationsEnabled = enable;
+      if (onEnableNotificationComplete != null) {
+        onEnableNotificationComplete.onEnableNotificationComplete(this, BluetoothGatt.GATT_SUCCESS);
+      }
+
+      if (enable && onBatteryLevelChange != null) {
+        onBatteryLevelChange.onBatteryLevelChange(this, profile.batteryLevel);
+      }
+    }, latency(profile.notificationMs, 0));
+    return true;
+  }
+
+  @Override
+  public boolean authenticate(byte[] masterKey) {
+    if (!notificationsEnabled) return false;
+
+    handler.postDelayed(() -> {
+      authenticated = masterKey != null && masterKey.length == 16;
+      if (onAuthenticationComplete != null) {
+        onAuthenticationComplete.onAuthenticationComplete(this, authenticated ? BluetoothReader.ERROR_SUCCESS : BluetoothReader.ERROR_AUTHENTICATION_FAILED);
+      }
+    }, latency(profile.authenticationMs, 0));
+    return true;
+  }
+
+  @Override
+  public boolean transmitEscapeCommand(byte[] command) {
+    if (!authenticated || command == null || command.length < 4) return false;
+
+    final byte[] response = Arrays.copyOf(command, command.length);
+    response[0] = (byte) 0xE1;
+    exchange(profile.escapeMs, 0, () -> {
+      if (Arrays.equals(command, AUTO_POLLING_START)) {
+        startPolling();
+      } else if (Arrays.equals(command, AUTO_POLLING_STOP)) {
+        polling = false;
+      }
+
+      if (onEscapeResponseAvailable != null) {
+        onEscapeResponseAvailable.onEscapeResponseAvailable(this, response, BluetoothReader.ERROR_SUCCESS);
+      }
+    });
+    return true;
+  }
+
+  @Override
+  public boolean transmitApdu(byte[] apdu) {
+    if (!authenticated || apdu == null || apdu.length < 4) return false;
+
+    exchange(profile.apduMs, profile.apduJitterMs, () -> {
+      if (onResponseApduAvailable == null) return;
+
+      if (cardUid == null) {
+        onResponseApduAvailable.onResponseApduAvailable(this, null, BluetoothReader.ERROR_CARD_OPERATION);
+      } else {
+        onResponseApduAvailable.onResponseApduAvailable(this, respond(apdu), BluetoothReader.ERROR_SUCCESS);
+      }
+    });
+    return true;
+  }
+
+  @Override
+  public boolean powerOnCard() {
+    if (!authenticated) return false;
+
+    exchange(profile.apduMs, profile.apduJitterMs, () -> {
+      if (onAtrAvailable == null) return;
+
+      if (cardUid == null) {
+        onAtrAvailable.onAtrAvailable(this, null, BluetoothReader.ERROR_CARD_OPERATION);
+      } else {
+        onAtrAvailable.onAtrAvailable(this, cardUid.length == 4 ? ATR_MIFARE_CLASSIC_1K : ATR_MIFARE_ULTRALIGHT, BluetoothReader.ERROR_SUCCESS);
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Runs the exchange once the reader is done with the previous ones, and the latency has passed.
+   */
+  private void exchange(int latencyMs, int jitterMs, Runnable done) {
+    handler.post(() -> {
+      final long now = SystemClock.uptimeMillis();
+      busyUntil = Math.max(now, busyUntil) + latency(latencyMs, jitterMs);
+      handler.postDelayed(done, busyUntil - now);
+    });
+  }
+
+  private byte[] respond(byte[] apdu) {
+    // GET DATA for the UID.
+    if (apdu[0] == (byte) 0xFF && apdu[1] == (byte) 0xCA) {
+      return concat(cardUid, SW_SUCCESS);
+    }
+
+    final byte[] data = new byte[profile.responseSize];
+    random.nextBytes(data);
+    return concat(data, SW_SUCCESS);
+  }
+
+  private void startPolling() {
+    if (polling) return;
+
+    polling = true;
+    if (profile.tapIntervalMs > 0) scheduleTap(profile.tapIntervalMs);
+  }
+
+  private void scheduleTap(int delayMs) {
+    handler.postDelayed(() -> {
+      if (!polling || (profile.tapCount > 0 && taps >= profile.tapCount)) return;
+
+      taps++;
+      cardUid = nextUid();
+      setCardStatus(BluetoothReader.CARD_STATUS_PRESENT);
+
+      handler.postDelayed(() -> {
+        cardUid = null;
+        setCardStatus(BluetoothReader.CARD_STATUS_ABSENT);
+        scheduleTap(profile.tapIntervalMs);
+      }, latency(profile.dwellMs, 0));
+    }, latency(delayMs, 0));
+  }
+
+  /**
+   * @return the UID of the next card, drawn from a pool of cardPoolSize cards so some of them are tapped again.
+   */
+  private byte[] nextUid() {
+    final int card = profile.cardPoolSize > 0 ? random.nextInt(profile.cardPoolSize) : taps;
+    final byte[] uid = new byte[profile.uidLength];
+    for (int i = 0; i < uid.length; i++) {
+      uid[i] = (byte) (card >>> (8 * (i % 4)));
+    }
+    uid[0] = 0x04;
+    return uid;
+  }
+
+  private void setCardStatus(int cardStatus) {
+    if (onCardStatusChange != null) onCardStatusChange.onCardStatusChange(this, cardStatus);
+  }
+
+  private long latency(int baseMs, int jitterMs) {
+    if (jitterMs <= 0) return baseMs;
+    return Math.max(0, baseMs + random.nextInt(2 * jitterMs + 1) - jitterMs);
+  }
+
+  private static byte[] concat(byte[] a, byte[] b) {
+    final byte[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+
+  @Override
+  public void setOnFailureListener(OnFailureListener listener) {
+    // The simulation answers every call, so it never fails.
+  }
+
+  @Override
+  public void setOnAuthenticationCompleteListener(OnAuthenticationCompleteListener listener) {
+    onAuthenticationComplete = listener;
+  }
+
+  @Override
+  public void setOnEnableNotificationCompleteListener(OnEnableNotificationCompleteListener listener) {
+    onEnableNotificationComplete = listener;
+  }
+
+  @Override
+  public void setOnResponseApduAvailableListener(OnResponseApduAvailableListener listener) {
+    onResponseApduAvailable = listener;
+  }
+
+  @Override
+  public void setOnEscapeResponseAvailableListener(OnEscapeResponseAvailableListener listener) {
+    onEscapeResponseAvailable = listener;
+  }
+
+  @Override
+  public void setOnCardStatusChangeListener(OnCardStatusChangeListener listener) {
+    onCardStatusChange = listener;
+  }
+
+  @Override
+  public void setOnAtrAvailableListener(OnAtrAvailableListener listener) {
+    onAtrAvailable = listener;
+  }
+
+  @Override
+  public void setOnBatteryLevelChangeListener(OnBatteryLevelChangeListener listener) {
+    onBatteryLevelChange = listener;
+  }
+
+  @Override
+  public void setOnBatteryLevelAvailableListener(OnBatteryLevelAvailableListener listener) {
+    onBatteryLevelAvailable = listener;
+  }
+
+  /**
+   * The latencies and the card traffic of a simulation. All times are in milliseconds.
+   */
+  static class Profile {
+    int connectMs;
+    int connectJitterMs;
+    int notificationMs;
+    int authenticationMs;
+    int escapeMs;
+    int apduMs;
+    int apduJitterMs;
+    // The time between a card leaving and the next one arriving. 0 disables the taps.
+    int tapIntervalMs;
+    // How long each card stays in the field.
+    int dwellMs;
+    // The number of taps, after which the simulation stops tapping. 0 is unlimited.
+    int tapCount = 0;
+    // The number of distinct cards that are tapped. 0 makes every card new.
+    int cardPoolSize = 0;
+    int uidLength = 7;
+    int responseSize = 16;
+    int batteryLevel = 100;
+    long seed = 42;
+
+    private static final Map<String, Profile> PRESETS = new HashMap<>();
+
+    static {
+      // No latency at all, which measures the plugin's own overhead.
+      PRESETS.put("instant", new Profile(0, 0, 0, 0, 0, 0, 0, 1, 1));
+      // Roughly an ACR1255U-J1 next to the phone.
+      PRESETS.put("typical", new Profile(1500, 300, 200, 300, 80, 40, 15, 1000, 500));
+      // A reader at the edge of its range, in a crowded 2.4 GHz band.
+      PRESETS.put("congested", new Profile(4000, 1500, 600, 800, 200, 90, 60, 1000, 500));
+    }
+
+    Profile(int connectMs, int connectJitterMs, int notificationMs, int authenticationMs, int escapeMs, int apduMs, int apduJitterMs, int tapIntervalMs, int dwellMs) {
+      this.connectMs = connectMs;
+      this.connectJitterMs = connectJitterMs;
+      this.notificationMs = notificationMs;
+      this.authenticationMs = authenticationMs;
+      this.escapeMs = escapeMs;
+      this.apduMs = apduMs;
+      this.apduJitterMs = apduJitterMs;
+      this.tapIntervalMs = tapIntervalMs;
+      this.dwellMs = dwellMs;
+    }
+
+    /**
+     * Creates a profile from the preset named by the "preset" argument, which defaults to "typical", with any of the
+     * other arguments overriding the preset's fields of the same name.
+     *
+     * @throws IllegalArgumentException if the preset doesn't exist, or an argument is out of range.
+     */
+    static Profile fromArguments(Map<String, Object> arguments) {
+      final Object presetName = arguments.get("preset");
+      final Profile preset = PRESETS.get(presetName == null ? "typical" : presetName);
+      if (preset == null) {
+        throw new IllegalArgumentException("Unknown simulation preset: " + presetName);
+      }
+
+      final Profile profile = new Profile(preset.connectMs, preset.connectJitterMs, preset.notificationMs, preset.authenticationMs, preset.escapeMs, preset.apduMs, preset.apduJitterMs, preset.tapIntervalMs, preset.dwellMs);
+      profile.connectMs = nonNegativeArgument(arguments, "connectMs", profile.connectMs);
+      profile.connectJitterMs = nonNegativeArgument(arguments, "connectJitterMs", profile.connectJitterMs);
+      profile.notificationMs = nonNegativeArgument(arguments, "notificationMs", profile.notificationMs);
+      profile.authenticationMs = nonNegativeArgument(arguments, "authenticationMs", profile.authenticationMs);
+      profile.escapeMs = nonNegativeArgument(arguments, "escapeMs", profile.escapeMs);
+      profile.apduMs = nonNegativeArgument(arguments, "apduMs", profile.apduMs);
+      profile.apduJitterMs = nonNegativeArgument(arguments, "apduJitterMs", profile.apduJitterMs);
+      profile.tapIntervalMs = nonNegativeArgument(arguments, "tapIntervalMs", profile.tapIntervalMs);
+      profile.dwellMs = nonNegativeArgument(arguments, "dwellMs", profile.dwellMs);
+      profile.tapCount = nonNegativeArgument(arguments, "tapCount", profile.tapCount);
+      profile.cardPoolSize = nonNegativeArgument(arguments, "cardPoolSize", profile.cardPoolSize);
+      profile.uidLength = Math.max(4, nonNegativeArgument(arguments, "uidLength", profile.uidLength));
+      profile.responseSize = nonNegativeArgument(arguments, "responseSize", profile.responseSize);
+      profile.batteryLevel = nonNegativeArgument(arguments, "batteryLevel", profile.batteryLevel);
+      if (profile.batteryLevel > 100) {
+        throw new IllegalArgumentException("The batteryLevel argument must be at most 100, but was " + profile.batteryLevel);
+      }
+
+      final Object seed = arguments.get("seed");
+      if (seed instanceof Number) profile.seed = ((Number) seed).longValue();
+      return profile;
+    }
+
+    private static int nonNegativeArgument(Map<String, Object> arguments, String name, int defaultValue) {
+      final Number value = (Number) arguments.get(name);
+      if (value == null) return defaultValue;
+      if (value.intValue() < 0) throw new IllegalArgumentException("The " + name + " argument can't be negative, but was " + value);
+
+      return value.intValue();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the cards read in tap mode, and how many were read within the last minute. The times of the taps are kept in
+ * a ring buffer of longs, so recording a tap doesn't allocate once the buffer has grown to the tap rate.
+ * <p>
+ * Not thread safe, it's only used on the card reader's worker thread.
+ */
+class TapMeter {
+  private static final long WINDOW_MS = 60000;
+
+  // The times of the taps within the window, oldest first, starting at head.
+  private long[] taps = new long[64];
+  private int head = 0;
+  private int size = 0;
+
+  private long cards = 0;
+  // The time from the card being detected to its ID being emitted.
+  private long totalTapMs = 0;
+
+  /**
+   * Records a card whose ID was read.
+   *
+   * @param detectedAt when the card was detected, in elapsed realtime milliseconds.
+   * @param now        when its ID was emitted.
+   */
+  void onTap(long detectedAt, long now) {
+    evict(now);
+    if (size == taps.length) grow();
+
+    taps[(head + size) % taps.length] = now;
+    size++;
+    cards++;
+    totalTapMs += now - detectedAt;
+  }
+
+  private void evict(long now) {
+    while (size > 0 && now - taps[head] >= WINDOW_MS) {
+      head = (head + 1) % taps.length;
+      size--;
+    }
+  }
+
+  private void grow() {
+    final long[] grown = new long[taps.length * 2];
+    for (int i = 0; i < size; i++) {
+      grown[i] = taps[(head + i) % taps.length];
+    }
+
+    taps = grown;
+    head = 0;
+  }
+
+  void reset() {
+    head = 0;
+    size = 0;
+    cards = 0;
+    totalTapMs = 0;
+  }
+
+  /**
+   * @return the cards read so far, for the TAP_STATS method.
+   */
+  Map<String, Object> getStats(long now) {
+    evict(now);
+
+    final HashMap<String, Object> stats = new HashMap<>();
+    stats.put("cards", cards);
+    stats.put("cardsPerMinute", size);
+    stats.put("averageTapMs", cards == 0 ? 0 : totalTapMs / cards);
+    return stats;
+  }
+}
@@ -0,0 +1,123 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary format of a session trace, which is recorded by TraceRecorder and replayed by ReplayReader.
+ * <p>
+ * A trace starts with the magic "ACST", a version byte, and the wall clock time of the recording in milliseconds as
+ * 8 bytes. Each record that follows is a type byte, then as varints: the nanoseconds since the previous record, the
+ * record's code (a state, status or error code), and the payload's length plus one, where 0 means no payload. Then
+ * come the payload's bytes.
+ * <p>
+ * GATT_STATE records the connection moving to CONNECTING when the plugin connects, to CONNECTED once the reader has
+ * been detected, so it includes the service discovery, and to DISCONNECTED.
+ */
+final class Trace {
+  static final byte[] MAGIC = {'A', 'C', 'S', 'T'};
+  static final int VERSION = 1;
+
+  // Events from the reader and the GATT connection.
+  static final int GATT_STATE = 1;
+  static final int NOTIFICATION_ENABLED = 2;
+  static final int AUTHENTICATION_COMPLETE = 3;
+  static final int APDU_RESPONSE = 4;
+  static final int ESCAPE_RESPONSE = 5;
+  static final int CARD_STATUS = 6;
+  static final int BATTERY_LEVEL = 7;
+  static final int ATR = 8;
+  // Calls made by the plugin. The code is the call's argument, where there's one.
+  static final int ENABLE_NOTIFICATION = 64;
+  static final int AUTHENTICATE = 65;
+  static final int APDU_SENT = 66;
+  static final int ESCAPE_SENT = 67;
+  static final int POWER_ON_CARD = 68;
+
+  private Trace() {
+  }
+
+  static boolean isCall(int type) {
+    return type >= ENABLE_NOTIFICATION;
+  }
+
+  static class Record {
+    final int type;
+    // Nanoseconds since the start of the trace.
+    final long timeNanos;
+    final int code;
+    final byte[] payload;
+
+    Record(int type, long timeNanos, int code, byte[] payload) {
+      this.type = type;
+      this.timeNanos = timeNanos;
+      this.code = code;
+      this.payload = payload;
+    }
+  }
+
+  /**
+   * Reads all the records of a trace file.
+   *
+   * @throws IOException if the file can't be read, or isn't a trace.
+   */
+  static List<Record> read(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      final byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      for (int i = 0; i < MAGIC.length; i++) {
+        if (magic[i] != MAGIC[i]) throw new IOException("Not a trace file: " + file);
+      }
+
+      final int version = in.readUnsignedByte();
+      if (version != VERSION) throw new IOException("Unsupported trace version " + version);
+      in.readLong();
+
+      final List<Record> records = new ArrayList<>();
+      long timeNanos = 0;
+      int type;
+      while ((type = in.read()) != -1) {
+        timeNanos += readVarLong(in);
+        final int code = (int) readVarLong(in);
+        final int length = (int) readVarLong(in);
+        byte[] payload = null;
+        if (length > 0) {
+          payload = new byte[length - 1];
+          in.readFully(payload);
+        }
+
+        records.add(new Record(type, timeNanos, code, payload));
+      }
+
+      return records;
+    }
+  }
+
+  static void writeVarLong(OutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  static long readVarLong(InputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int b = in.read();
+      if (b == -1) throw new EOFException("Truncated trace record");
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+
+    throw new IOException("Malformed varint in trace");
+  }
+}
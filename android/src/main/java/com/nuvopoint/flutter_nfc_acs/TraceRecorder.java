@@ -0,0 +1,63 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static android.content.ContentValues.TAG;
+
+/**
+ * Records the interactions with a reader into a trace file, with nanosecond timestamps. See Trace for the format.
+ */
+class TraceRecorder {
+  private final File file;
+  private final DataOutputStream out;
+  private long lastNanos;
+  private boolean failed = false;
+
+  TraceRecorder(File file) throws IOException {
+    this.file = file;
+    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    out.write(Trace.MAGIC);
+    out.writeByte(Trace.VERSION);
+    out.writeLong(System.currentTimeMillis());
+    lastNanos = SystemClock.elapsedRealtimeNanos();
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * Appends a record. The listeners of the reader call this from binder threads, so the records are serialized.
+   */
+  synchronized void record(int type, int code, byte[] payload) {
+    if (failed) return;
+
+    final long now = SystemClock.elapsedRealtimeNanos();
+    try {
+      out.writeByte(type);
+      Trace.writeVarLong(out, now - lastNanos);
+      Trace.writeVarLong(out, code & 0xFFFFFFFFL);
+      Trace.writeVarLong(out, payload == null ? 0 : payload.length + 1);
+      if (payload != null) out.write(payload);
+      lastNanos = now;
+    } catch (IOException e) {
+      Log.w(TAG, "Could not write to the trace, so the recording stopped", e);
+      failed = true;
+    }
+  }
+
+  synchronized void close() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      Log.w(TAG, "Could not close the trace", e);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * A request that sends its commands one at a time, and completes its own MethodChannel.Result once it is done.
+ */
+abstract class Transceive {
+  final int id;
+  final MethodChannel.Result result;
+  // When the request entered the CommandQueue, and when its first command was sent, in elapsed realtime milliseconds.
+  long queuedAt;
+  long startedAt;
+  // When the request's current attempt was first sent, which starts over when it's restarted on a new card, but not
+  // when it's resumed after being preempted. The sequence deadline runs from here.
+  long attemptStartedAt;
+  // The CommandQueue lane, which is the interactive one unless it's set to LANE_BULK.
+  int lane = 0;
+  // Whether the responses may be answered from, and stored in, the ResponseCache, which is only safe for reads.
+  boolean cacheable = false;
+  // How often the request made way for the interactive lane, and whether it's waiting to resume after doing so.
+  int preemptions = 0;
+  boolean preempted = false;
+
+  Transceive(int id, MethodChannel.Result result) {
+    this.id = id;
+    this.result = result;
+  }
+
+  /**
+   * @return the command to send next.
+   */
+  abstract byte[] command();
+
+  /**
+   * Handles the response to the current command, including its status word.
+   *
+   * @return true if there's another command to send.
+   */
+  abstract boolean onResponse(byte[] response);
+
+  /**
+   * @return the value the result is completed with.
+   */
+  abstract Object getResult();
+
+  /**
+   * Starts over from the first command, e.g. when the card was removed midway.
+   */
+  abstract void reset();
+
+  /**
+   * @return true if the request can pick up where it left off after other requests went ahead of it, see
+   *     {@link #resume()}. Requests that can't aren't preempted.
+   */
+  boolean canResume() {
+    return false;
+  }
+
+  /**
+   * Prepares the request to pick up where it left off after other requests went ahead of it, which may have changed
+   * what's selected or authenticated on the card.
+   */
+  void resume() {
+  }
+
+  /**
+   * Called when the request gets a place in the CommandQueue, which may be later than it was offered if the queue
+   * blocks when full.
+   */
+  void onAdmitted() {
+  }
+
+  /**
+   * Completes the result with {@link #getResult()}, on the main thread.
+   */
+  void complete() {
+    final Object value = getResult();
+    MainThreadDispatcher.post(() -> result.success(value));
+  }
+
+  /**
+   * Completes the result with an error, on the main thread.
+   */
+  void fail(String code, String message) {
+    MainThreadDispatcher.post(() -> result.error(code, message, null));
+  }
+}
@@ -9,121 +9,138 @@
 
 package com.nuvopoint.flutter_nfc_acs;
 
-import java.util.Locale;
+import android.util.Base64;
+
+import java.util.Arrays;
 
 class Utils {
+  private static final char[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+  // Maps an ASCII character to its hex value, or -1 if it isn't a hex digit.
+  private static final byte[] HEX_VALUES = new byte[128];
+
+  static {
+    Arrays.fill(HEX_VALUES, (byte) -1);
+    for (int i = 0; i < 10; i++) HEX_VALUES['0' + i] = (byte) i;
+    for (int i = 0; i < 6; i++) {
+      HEX_VALUES['A' + i] = (byte) (10 + i);
+      HEX_VALUES['a' + i] = (byte) (10 + i);
+    }
+  }
+
+  /**
+   * @return the bytes as upper case hex, each followed by a space.
+   */
   static String toHexString(byte[] array) {
+    if (array == null) return "";
 
-    StringBuilder bufferString = new StringBuilder();
+    final char[] chars = new char[array.length * 3];
+    encodeHex(array, 0, array.length, chars, 0, true);
+    return new String(chars);
+  }
 
-    if (array != null) {
-      for (byte b : array) {
-        String hexChar = Integer.toHexString(b & 0xFF);
-        if (hexChar.length() == 1) {
-          hexChar = "0" + hexChar;
-        }
-        bufferString.append(hexChar.toUpperCase(Locale.US)).append(" ");
-      }
+  /**
+   * Encodes the bytes as upper case hex into a caller supplied buffer, which must have room for 2 chars per byte, or 3
+   * if spaced.
+   *
+   * @param spaced if true, each byte is followed by a space.
+   * @return the number of chars written.
+   */
+  static int encodeHex(byte[] src, int srcOffset, int length, char[] dst, int dstOffset, boolean spaced) {
+    int position = dstOffset;
+    for (int i = srcOffset; i < srcOffset + length; i++) {
+      final int b = src[i] & 0xFF;
+      dst[position++] = HEX_DIGITS[b >>> 4];
+      dst[position++] = HEX_DIGITS[b & 0x0F];
+      if (spaced) dst[position++] = ' ';
     }
 
-    return bufferString.toString();
+    return position - dstOffset;
   }
 
-  static byte[] toByteArray(String hexString) {
-    int hexStringLength = hexString.length();
-    byte[] byteArray;
-    int count = 0;
-    char c;
-    int i;
+  /**
+   * Appends the bytes as upper case hex, separated by a space if spaced, without a trailing space.
+   */
+  static StringBuilder appendHex(StringBuilder builder, byte[] src, int srcOffset, int length, boolean spaced) {
+    builder.ensureCapacity(builder.length() + length * 3);
+    for (int i = srcOffset; i < srcOffset + length; i++) {
+      if (spaced && i > srcOffset) builder.append(' ');
+      final int b = src[i] & 0xFF;
+      builder.append(HEX_DIGITS[b >>> 4]).append(HEX_DIGITS[b & 0x0F]);
+    }
 
-    // Count number of hex characters
-    for (i = 0; i < hexStringLength; i++) {
+    return builder;
+  }
 
-      c = hexString.charAt(i);
-      if (c >= '0' && c <= '9' || c >= 'A' && c <= 'F' || c >= 'a'
-          && c <= 'f') {
-        count++;
+  /**
+   * Decodes the hex digits in the string into a caller supplied buffer, skipping any other characters, such as spaces.
+   * An odd digit at the end is taken as the high nibble of the last byte.
+   *
+   * @return the number of bytes written.
+   */
+  static int decodeHex(CharSequence hex, byte[] dst, int dstOffset) {
+    int position = dstOffset;
+    boolean high = true;
+    for (int i = 0; i < hex.length(); i++) {
+      final char c = hex.charAt(i);
+      final int value = c < 128 ? HEX_VALUES[c] : -1;
+      if (value < 0) continue;
+
+      if (high) {
+        dst[position] = (byte) (value << 4);
+      } else {
+        dst[position++] |= value;
       }
+      high = !high;
     }
 
-    byteArray = new byte[(count + 1) / 2];
-    boolean first = true;
-    int len = 0;
-    int value;
-    for (i = 0; i < hexStringLength; i++) {
-
-      c = hexString.charAt(i);
-      if (c >= '0' && c <= '9') {
-        value = c - '0';
-      } else if (c >= 'A' && c <= 'F') {
-        value = c - 'A' + 10;
-      } else if (c >= 'a' && c <= 'f') {
-        value = c - 'a' + 10;
-      } else {
-        value = -1;
-      }
+    return high ? position - dstOffset : position - dstOffset + 1;
+  }
 
-      if (value >= 0) {
-        if (first) {
-          byteArray[len] = (byte) (value << 4);
-        } else {
-          byteArray[len] |= value;
-          len++;
-        }
-        first = !first;
-      }
+  /**
+   * @return the number of hex digits in the string.
+   */
+  static int countHexDigits(CharSequence hex) {
+    int count = 0;
+    for (int i = 0; i < hex.length(); i++) {
+      final char c = hex.charAt(i);
+      if (c < 128 && HEX_VALUES[c] >= 0) count++;
     }
 
-    return byteArray;
+    return count;
+  }
+
+  /**
+   * @return the status word in the last two bytes of a response APDU, or -1 if it is too short.
+   */
+  static int statusWord(byte[] response) {
+    if (response == null || response.length < 2) return -1;
+    return ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
   }
 
-  static byte[] hexStringToByteArray(String s) {
-    int len = s.length();
-    byte[] data = new byte[len / 2];
-    for (int i = 0; i < len; i += 2) {
-      data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4)
-          + Character.digit(s.charAt(i + 1), 16));
+  /**
+   * @return the data of a response APDU, without the status word.
+   */
+  static byte[] responseData(byte[] response) {
+    if (response == null || response.length <= 2) return new byte[0];
+    return Arrays.copyOf(response, response.length - 2);
+  }
+
+  /**
+   * Decodes the argument of SEND_APDU, which is one or more Base64 encoded commands separated by '|'.
+   */
+  static byte[][] decodeApduCommands(String encoded) {
+    final String[] parts = encoded.split("\\|");
+    final byte[][] commands = new byte[parts.length][];
+    for (int c = 0; c < parts.length; c++) {
+      commands[c] = Base64.decode(parts[c], Base64.DEFAULT);
     }
-    return data;
+
+    return commands;
   }
 
-//  static byte[] hexString2Bytes(String string) {
-//    if (string == null)
-//      throw new NullPointerException("string was null");
-//
-//    int len = string.length();
-//
-//    if (len == 0)
-//      return new byte[0];
-//    if (len % 2 == 1)
-//      throw new IllegalArgumentException(
-//          "string length should be an even number");
-//
-//    byte[] ret = new byte[len / 2];
-//    byte[] tmp = string.getBytes();
-//
-//    for (int i = 0; i < len; i += 2) {
-//      if (!isHexNumber(tmp[i]) || !isHexNumber(tmp[i + 1])) {
-//        throw new NumberFormatException(
-//            "string contained invalid value");
-//      }
-//      ret[i / 2] = uniteBytes(tmp[i], tmp[i + 1]);
-//    }
-//    return ret;
-//  }
-
-//  public static byte[] getHexBytes2(String rawdata) {
-//    if (rawdata == null || rawdata.isEmpty()) {
-//      return null;
-//    }
-//
-//    String command = rawdata.replace(" ", "").replace("\n", "");
-//
-//    if (command.isEmpty() || command.length() % 2 != 0
-//        || isHexNumber(command) == false) {
-//      return null;
-//    }
-//
-//    return hexString2Bytes(command);
-//  }
+  static byte[] toByteArray(String hexString) {
+    final byte[] byteArray = new byte[(countHexDigits(hexString) + 1) / 2];
+    decodeHex(hexString, byteArray, 0);
+    return byteArray;
+  }
 }
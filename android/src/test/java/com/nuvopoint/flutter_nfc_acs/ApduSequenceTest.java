@@ -0,0 +1,68 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ApduSequenceTest {
+  private static final byte[] SELECT = {0x00, (byte) 0xA4, 0x04, 0x00, 0x02, 0x3F, 0x00};
+  private static final byte[] READ_FIRST = {0x00, (byte) 0xB0, 0x00, 0x00, 0x02};
+  private static final byte[] READ_SECOND = {0x00, (byte) 0xB0, 0x00, 0x02, 0x02};
+  private static final byte[] UPDATE = {0x00, (byte) 0xD6, 0x00, 0x00, 0x01, 0x01};
+  private static final byte[] OK = {(byte) 0x90, 0x00};
+
+  @Test
+  public void mergesTheResponsesWithoutTheirStatusWords() {
+    final ApduSequence sequence = new ApduSequence(1, new byte[][]{SELECT, READ_FIRST}, null);
+
+    assertTrue(sequence.onResponse(OK));
+    assertFalse(sequence.onResponse(new byte[]{0x01, 0x02, (byte) 0x90, 0x00}));
+    assertArrayEquals(new byte[]{0x01, 0x02}, (byte[]) sequence.getResult());
+  }
+
+  @Test
+  public void stopsAtAFailedStatusWord() {
+    final ApduSequence sequence = new ApduSequence(1, new byte[][]{SELECT, READ_FIRST}, null);
+
+    assertFalse(sequence.onResponse(new byte[]{0x6A, (byte) 0x82}));
+  }
+
+  @Test
+  public void resumesBySelectingAgain() {
+    final ApduSequence sequence = new ApduSequence(1, new byte[][]{SELECT, READ_FIRST, READ_SECOND}, null);
+    sequence.onResponse(OK);
+    sequence.onResponse(new byte[]{0x01, 0x02, (byte) 0x90, 0x00});
+
+    assertTrue(sequence.canResume());
+    sequence.resume();
+
+    assertTrue(sequence.isResuming());
+    assertArrayEquals(SELECT, sequence.command());
+    assertTrue(sequence.onResponse(OK));
+    assertFalse(sequence.isResuming());
+    assertArrayEquals(READ_SECOND, sequence.command());
+    assertFalse(sequence.onResponse(new byte[]{0x03, 0x04, (byte) 0x90, 0x00}));
+    assertArrayEquals(new byte[]{0x01, 0x02, 0x03, 0x04}, (byte[]) sequence.getResult());
+  }
+
+  @Test
+  public void failsWhenSelectingAgainFails() {
+    final ApduSequence sequence = new ApduSequence(1, new byte[][]{SELECT, READ_FIRST, READ_SECOND}, null);
+    sequence.onResponse(OK);
+    sequence.resume();
+
+    assertFalse(sequence.onResponse(new byte[]{0x6A, (byte) 0x82}));
+  }
+
+  @Test
+  public void cannotResumeAfterAWrite() {
+    final ApduSequence sequence = new ApduSequence(1, new byte[][]{SELECT, UPDATE, READ_FIRST}, null);
+    sequence.onResponse(OK);
+    assertTrue(sequence.canResume());
+
+    sequence.onResponse(OK);
+    assertFalse(sequence.canResume());
+  }
+}
@@ -0,0 +1,144 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CommandQueueTest {
+  private CommandQueue queue;
+
+  @Before
+  public void setUp() {
+    queue = new CommandQueue();
+  }
+
+  private static ApduSequence request(int id) {
+    return new ApduSequence(id, new byte[][]{{0x00, (byte) 0xB0, 0x00, 0x00, 0x10}}, null);
+  }
+
+  private static ApduSequence bulkRequest(int id) {
+    final ApduSequence sequence = request(id);
+    sequence.lane = CommandQueue.LANE_BULK;
+    return sequence;
+  }
+
+  @Test
+  public void rejectTurnsTheNewRequestAway() {
+    queue.configure(1, CommandQueue.OVERFLOW_REJECT);
+    final ApduSequence first = request(1);
+    final ApduSequence second = request(2);
+
+    assertNull(queue.offer(first));
+    assertSame(second, queue.offer(second));
+    assertTrue(queue.contains(1));
+    assertFalse(queue.contains(2));
+  }
+
+  @Test
+  public void dropOldestDropsTheOldestUnstartedRequest() {
+    queue.configure(2, CommandQueue.OVERFLOW_DROP_OLDEST);
+    final ApduSequence active = request(1);
+    final ApduSequence waiting = request(2);
+    final ApduSequence newest = request(3);
+    queue.offer(active);
+    queue.offer(waiting);
+    active.startedAt = 1;
+
+    assertSame(waiting, queue.offer(newest));
+    assertTrue(queue.contains(1));
+    assertFalse(queue.contains(2));
+    assertTrue(queue.contains(3));
+  }
+
+  @Test
+  public void dropOldestRejectsWhenEveryRequestHasStarted() {
+    queue.configure(2, CommandQueue.OVERFLOW_DROP_OLDEST);
+    final ApduSequence active = request(1);
+    final ApduSequence restarted = request(2);
+    queue.offer(active);
+    queue.offer(restarted);
+    active.startedAt = 1;
+    restarted.startedAt = 1;
+
+    final ApduSequence newest = request(3);
+    assertSame(newest, queue.offer(newest));
+    assertTrue(queue.contains(1));
+    assertTrue(queue.contains(2));
+  }
+
+  @Test
+  public void blockAdmitsTheWaitingRequestWhenThereIsRoom() {
+    queue.configure(1, CommandQueue.OVERFLOW_BLOCK);
+    final ApduSequence first = request(1);
+    final ApduSequence blocked = request(2);
+    queue.offer(first);
+
+    assertNull(queue.offer(blocked));
+    assertTrue(queue.contains(2));
+    assertSame(first, queue.peek());
+    assertEquals(1, queue.getStats().get("blocked"));
+
+    queue.remove(first);
+    assertSame(blocked, queue.peek());
+    assertEquals(0, queue.getStats().get("blocked"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void configureRejectsAnEmptyQueue() {
+    queue.configure(0, CommandQueue.OVERFLOW_REJECT);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void configureRejectsAnUnknownPolicy() {
+    queue.configure(1, 3);
+  }
+
+  @Test
+  public void onStartedKeepsTheAttemptOfAResumedRequest() {
+    final ApduSequence sequence = request(1);
+    queue.offer(sequence);
+    sequence.startedAt = 1;
+    sequence.attemptStartedAt = 5;
+
+    queue.onStarted(sequence);
+
+    assertEquals(5, sequence.attemptStartedAt);
+  }
+
+  @Test
+  public void interactiveLaneGoesFirst() {
+    final ApduSequence bulk = bulkRequest(1);
+    final ApduSequence interactive = request(2);
+    queue.offer(bulk);
+    queue.offer(interactive);
+
+    assertSame(interactive, queue.peek());
+    assertSame(bulk, queue.peek(CommandQueue.LANE_BULK));
+
+    queue.remove(interactive);
+    assertSame(bulk, queue.peek());
+  }
+
+  @Test
+  public void resetStartedStartsOverOnANewCard() {
+    final ApduSequence preempted = bulkRequest(1);
+    final ApduSequence waiting = bulkRequest(2);
+    queue.offer(preempted);
+    queue.offer(waiting);
+    preempted.startedAt = 1;
+    preempted.attemptStartedAt = 1;
+    preempted.preempted = true;
+    preempted.onResponse(new byte[]{0x01, (byte) 0x90, 0x00});
+
+    queue.resetStarted();
+
+    assertFalse(preempted.preempted);
+    assertEquals(0, preempted.attemptStartedAt);
+    assertEquals(0, ((byte[]) preempted.getResult()).length);
+  }
+}
@@ -0,0 +1,95 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MifareSectorReadTest {
+  private static final byte[] KEY = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+  private static final byte[] OK = {(byte) 0x90, 0x00};
+  private static final byte[] FAILED = {0x63, 0x00};
+  private static final byte INS_LOAD_KEY = (byte) 0x82;
+  private static final byte INS_AUTHENTICATE = (byte) 0x86;
+  private static final byte INS_READ = (byte) 0xB0;
+
+  private MifareSectorRead read;
+
+  @Before
+  public void setUp() {
+    final Map<String, Object> arguments = new HashMap<>();
+    arguments.put("key", KEY);
+    arguments.put("firstSector", 1);
+    arguments.put("lastSector", 1);
+    read = MifareSectorRead.parse(1, arguments, null);
+    read.keySlots = new MifareSectorRead.KeySlots();
+  }
+
+  private static byte[] block() {
+    final byte[] response = new byte[18];
+    response[16] = (byte) 0x90;
+    return response;
+  }
+
+  @Test
+  public void skipsLoadingAKeyTheSlotHolds() {
+    read.keySlots.set(0, KEY);
+
+    assertEquals(INS_AUTHENTICATE, read.command()[1]);
+  }
+
+  @Test
+  public void reloadsTheKeyOnceWhenAuthenticatingFails() {
+    read.keySlots.set(0, KEY);
+    assertEquals(INS_AUTHENTICATE, read.command()[1]);
+
+    assertTrue(read.onResponse(FAILED));
+    assertFalse(read.keySlots.holds(0, KEY));
+    assertEquals(INS_LOAD_KEY, read.command()[1]);
+    assertTrue(read.onResponse(OK));
+    assertEquals(INS_AUTHENTICATE, read.command()[1]);
+
+    assertFalse(read.onResponse(FAILED));
+    assertFalse(read.keySlots.holds(0, KEY));
+  }
+
+  @Test
+  public void authenticatesAgainWhenItResumes() {
+    read.command();
+    read.onResponse(OK);
+    read.command();
+    read.onResponse(OK);
+    assertEquals(INS_READ, read.command()[1]);
+    assertTrue(read.onResponse(block()));
+
+    assertTrue(read.canResume());
+    read.resume();
+
+    assertEquals(INS_AUTHENTICATE, read.command()[1]);
+    assertEquals(5, read.command()[7]);
+  }
+
+  @Test
+  public void readsTheBlocksOfTheSector() {
+    read.command();
+    read.onResponse(OK);
+    read.command();
+    read.onResponse(OK);
+
+    assertTrue(read.onResponse(block()));
+    assertTrue(read.onResponse(block()));
+    assertFalse(read.onResponse(block()));
+    assertEquals(48, ((byte[]) read.getResult()).length);
+  }
+
+  @Test
+  public void recognisesALoadKey() {
+    assertTrue(MifareSectorRead.isLoadKey(new byte[]{(byte) 0xFF, INS_LOAD_KEY, 0x00, 0x00, 0x06}));
+    assertFalse(MifareSectorRead.isLoadKey(new byte[]{(byte) 0xFF, INS_AUTHENTICATE, 0x00, 0x00, 0x05}));
+  }
+}
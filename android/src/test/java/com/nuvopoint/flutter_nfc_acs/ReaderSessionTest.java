@@ -0,0 +1,78 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReaderSessionTest {
+  private ReaderSession session;
+
+  @Before
+  public void setUp() {
+    session = new ReaderSession();
+  }
+
+  @Test
+  public void startsIdle() {
+    assertEquals(ReaderSession.IDLE, session.getState());
+    assertFalse(session.isCardPresent());
+    assertEquals(-1, session.beginTransmit());
+  }
+
+  @Test
+  public void goesThroughAnExchange() {
+    assertEquals(ReaderSession.IDLE, session.onCardPresent());
+    assertEquals(ReaderSession.CARD_PRESENT, session.getState());
+
+    final long generation = session.beginTransmit();
+    assertTrue(generation >= 0);
+    assertEquals(ReaderSession.TRANSMITTING, session.getState());
+
+    assertTrue(session.sent(generation));
+    assertEquals(ReaderSession.AWAITING_RESPONSE, session.getState());
+
+    assertTrue(session.onResponse());
+    assertEquals(ReaderSession.CARD_PRESENT, session.getState());
+  }
+
+  @Test
+  public void allowsOneCommandAtATime() {
+    session.onCardPresent();
+    final long generation = session.beginTransmit();
+    session.sent(generation);
+
+    assertEquals(-1, session.beginTransmit());
+  }
+
+  @Test
+  public void dropsAResponseThatIsNotAwaited() {
+    session.onCardPresent();
+
+    assertFalse(session.onResponse());
+    assertEquals(ReaderSession.CARD_PRESENT, session.getState());
+  }
+
+  @Test
+  public void dropsALateResponseAfterTheCardWasRemoved() {
+    session.onCardPresent();
+    session.sent(session.beginTransmit());
+
+    assertEquals(ReaderSession.AWAITING_RESPONSE, session.onCardAbsent());
+    assertFalse(session.onResponse());
+    assertEquals(ReaderSession.IDLE, session.getState());
+  }
+
+  @Test
+  public void abandonsACommandWhenANewCardArrives() {
+    session.onCardPresent();
+    final long generation = session.beginTransmit();
+
+    assertEquals(ReaderSession.TRANSMITTING, session.onCardPresent());
+    assertFalse(session.sent(generation));
+    assertFalse(session.onResponse());
+    assertTrue(session.beginTransmit() > generation);
+  }
+}
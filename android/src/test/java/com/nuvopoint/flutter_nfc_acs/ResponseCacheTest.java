@@ -0,0 +1,79 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class ResponseCacheTest {
+  private static final byte[] UID = {0x04, 0x11, 0x22, 0x33};
+  private static final byte[] SELECT_A = {0x00, (byte) 0xA4, 0x04, 0x00, 0x01, 0x0A};
+  private static final byte[] SELECT_B = {0x00, (byte) 0xA4, 0x04, 0x00, 0x01, 0x0B};
+  private static final byte[] READ = {0x00, (byte) 0xB0, 0x00, 0x00, 0x01};
+  private static final byte[] OK = {(byte) 0x90, 0x00};
+
+  private ResponseCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new ResponseCache();
+    cache.configure(1024, 1000);
+  }
+
+  @Test
+  public void answersTheSameCommandsOnTheSameCard() {
+    final byte[][] commands = {SELECT_A, READ};
+    cache.put(UID, commands, 0, OK, 0);
+    cache.put(UID, commands, 1, new byte[]{0x01, (byte) 0x90, 0x00}, 0);
+
+    final byte[][] responses = cache.getAll(UID, commands, 10);
+
+    assertArrayEquals(OK, responses[0]);
+    assertArrayEquals(new byte[]{0x01, (byte) 0x90, 0x00}, responses[1]);
+  }
+
+  @Test
+  public void keysACommandByTheCommandsBeforeIt() {
+    cache.put(UID, new byte[][]{SELECT_A, READ}, 0, OK, 0);
+    cache.put(UID, new byte[][]{SELECT_A, READ}, 1, new byte[]{0x01, (byte) 0x90, 0x00}, 0);
+    cache.put(UID, new byte[][]{SELECT_B, READ}, 0, OK, 0);
+
+    assertNull(cache.getAll(UID, new byte[][]{SELECT_B, READ}, 10));
+  }
+
+  @Test
+  public void missesAStaleEntry() {
+    cache.put(UID, new byte[][]{SELECT_A}, 0, OK, 0);
+
+    assertNull(cache.getAll(UID, new byte[][]{SELECT_A}, 1001));
+  }
+
+  @Test
+  public void keepsNoFailedResponse() {
+    cache.put(UID, new byte[][]{SELECT_A}, 0, new byte[]{0x6A, (byte) 0x82}, 0);
+
+    assertNull(cache.getAll(UID, new byte[][]{SELECT_A}, 10));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedEntry() {
+    // Room for one entry of a 4 byte ID, a 6 byte command and a status word.
+    cache.configure(20, 1000);
+    cache.put(UID, new byte[][]{SELECT_A}, 0, OK, 0);
+    cache.put(UID, new byte[][]{SELECT_B}, 0, OK, 0);
+
+    assertNull(cache.getAll(UID, new byte[][]{SELECT_A}, 10));
+    assertArrayEquals(OK, cache.getAll(UID, new byte[][]{SELECT_B}, 10)[0]);
+  }
+
+  @Test
+  public void isOffWithoutAMemoryCap() {
+    cache.configure(0, 1000);
+    cache.put(UID, new byte[][]{SELECT_A}, 0, OK, 0);
+
+    assertFalse(cache.isEnabled());
+    assertNull(cache.getAll(UID, new byte[][]{SELECT_A}, 10));
+  }
+}
@@ -0,0 +1,44 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResponseChainTest {
+  private static final byte[] READ = {0x00, (byte) 0xB0, 0x00, 0x00, 0x00};
+
+  private ResponseChain chain;
+
+  @Before
+  public void setUp() {
+    chain = new ResponseChain();
+    chain.start(READ);
+  }
+
+  @Test
+  public void passesACompleteResponseThrough() {
+    final byte[] response = {0x01, (byte) 0x90, 0x00};
+
+    assertNull(chain.onResponse(response));
+    assertArrayEquals(response, chain.getResponse());
+  }
+
+  @Test
+  public void fetchesTheRestWithGetResponse() {
+    assertArrayEquals(new byte[]{0x00, (byte) 0xC0, 0x00, 0x00, 0x02}, chain.onResponse(new byte[]{0x01, 0x61, 0x02}));
+    assertNull(chain.onResponse(new byte[]{0x02, 0x03, (byte) 0x90, 0x00}));
+    assertArrayEquals(new byte[]{0x01, 0x02, 0x03, (byte) 0x90, 0x00}, chain.getResponse());
+  }
+
+  @Test
+  public void sendsTheCommandAgainWithTheRightLe() {
+    assertArrayEquals(new byte[]{0x00, (byte) 0xB0, 0x00, 0x00, 0x10}, chain.onResponse(new byte[]{0x6C, 0x10}));
+  }
+
+  @Test
+  public void addsAnLeToACommandWithoutOne() {
+    assertArrayEquals(new byte[]{0x00, (byte) 0xA4, 0x04, 0x00, 0x01, 0x3F, 0x08}, ResponseChain.withLe(new byte[]{0x00, (byte) 0xA4, 0x04, 0x00, 0x01, 0x3F}, (byte) 0x08));
+  }
+}
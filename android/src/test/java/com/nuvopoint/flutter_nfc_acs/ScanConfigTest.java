@@ -0,0 +1,45 @@
+package com.nuvopoint.flutter_nfc_acs;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScanConfigTest {
+  @Test
+  public void parsesTheServiceUuidsOfAnAdvert() {
+    final byte[] advert = {
+        // Flags.
+        0x02, 0x01, 0x06,
+        // A complete list of 16 bit UUIDs.
+        0x05, 0x03, 0x0F, 0x18, 0x0A, 0x18,
+        // A complete list of 128 bit UUIDs.
+        0x11, 0x07,
+        0x10, 0x0F, 0x0E, 0x0D, 0x0C, 0x0B, 0x0A, 0x09, 0x08, 0x07, 0x06, 0x05, 0x04, 0x03, 0x02, 0x01,
+    };
+
+    final List<UUID> uuids = ScanConfig.parseServiceUuids(advert);
+
+    assertEquals(3, uuids.size());
+    assertEquals(UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb"), uuids.get(0));
+    assertEquals(UUID.fromString("0000180a-0000-1000-8000-00805f9b34fb"), uuids.get(1));
+    assertEquals(UUID.fromString("01020304-0506-0708-090a-0b0c0d0e0f10"), uuids.get(2));
+  }
+
+  @Test
+  public void stopsAtATruncatedStructure() {
+    final byte[] advert = {0x03, 0x03, 0x0F, 0x18, 0x05, 0x03, 0x0A};
+
+    final List<UUID> uuids = ScanConfig.parseServiceUuids(advert);
+
+    assertEquals(1, uuids.size());
+  }
+
+  @Test
+  public void parsesNothingFromNoAdvert() {
+    assertTrue(ScanConfig.parseServiceUuids(null).isEmpty());
+  }
+}
@@ -10,11 +10,32 @@ class FlutterNfcAcs {
   static const EventChannel _deviceBatteryChannel = const EventChannel('flutter.nuvopoint.com/nfc/acs/device/battery');
   static const EventChannel _deviceStatusChannel = const EventChannel("flutter.nuvopoint.com/nfc/acs/device/status");
   static const EventChannel _deviceCardChannel = const EventChannel("flutter.nuvopoint.com/nfc/acs/device/card");
+  static const EventChannel _deviceCardUidChannel = const EventChannel("flutter.nuvopoint.com/nfc/acs/device/card/uid");
+  static const EventChannel _deviceCardInfoChannel = const EventChannel("flutter.nuvopoint.com/nfc/acs/device/card/info");
 
   // _channel's commands
   static const String CONNECT = 'CONNECT';
   static const String DISCONNECT = 'DISCONNECT';
+  static const String CONNECT_READER = 'CONNECT_READER';
+  static const String DISCONNECT_READER = 'DISCONNECT_READER';
   static const String SEND_APDU = 'SEND_APDU';
+  static const String TRANSMIT_APDU = 'TRANSMIT_APDU';
+  static const String TRANSCEIVE = 'TRANSCEIVE';
+  static const String RUN_APDU_SCRIPT = 'RUN_APDU_SCRIPT';
+  static const String READ_MIFARE_SECTORS = 'READ_MIFARE_SECTORS';
+  static const String READ_NDEF = 'READ_NDEF';
+  static const String SIMULATE = 'SIMULATE';
+  static const String START_TRACE = 'START_TRACE';
+  static const String STOP_TRACE = 'STOP_TRACE';
+  static const String REPLAY_TRACE = 'REPLAY_TRACE';
+  static const String CONFIGURE_QUEUE = 'CONFIGURE_QUEUE';
+  static const String QUEUE_STATS = 'QUEUE_STATS';
+  static const String CONFIGURE_TIMEOUTS = 'CONFIGURE_TIMEOUTS';
+  static const String TAP_STATS = 'TAP_STATS';
+  static const String CONFIGURE_REPEATS = 'CONFIGURE_REPEATS';
+  static const String CONFIGURE_RESPONSE_CACHE = 'CONFIGURE_RESPONSE_CACHE';
+  static const String RESPONSE_CACHE_STATS = 'RESPONSE_CACHE_STATS';
+  static const String CONFIGURE_SCAN = 'CONFIGURE_SCAN';
 
   // The _deviceStatusChannel's outputs
   static const String CONNECTED = "CONNECTED";
@@ -24,23 +45,48 @@ class FlutterNfcAcs {
   static const String UNKNOWN_CONNECTION_STATE = "UNKNOWN_CONNECTION_STATE";
 
   static Stream<List<AcsDevice>>? _devices;
+  static Stream<DeviceChanges>? _deviceChanges;
+  // The devices found by the current scan, folded from the changes.
+  static final Map<String, AcsDevice> _discoveredDevices = {};
   static Stream<String>? _connectionStatus;
+  static Stream<dynamic>? _cardEvents;
   static Stream<String>? _cards;
+  static Stream<Uint8List>? _cardResponses;
+  static Stream<Uint8List>? _cardIds;
+  static Stream<dynamic>? _cardUidEvents;
+  static Stream<CardSighting<String>>? _cardSightings;
+  static Stream<CardSighting<Uint8List>>? _cardIdSightings;
+  static Stream<CardInfo>? _cardInfo;
   static Stream<int>? _batteryStatus;
+  static int _nextRequestId = 0;
 
+  /// All the devices found by the current scan, each time some of them change.
   static Stream<List<AcsDevice>> get devices {
-    _devices ??= _devicesChannel.receiveBroadcastStream().map<List<AcsDevice>>((data) {
-      return (data as Map<dynamic, dynamic>).entries.map<AcsDevice>((m) {
-        print(m.key);
-        print(m.value);
-        print('--------------');
-        return AcsDevice(m.key, name: m.value);
-      }).toList();
+    _devices ??= deviceChanges.map<List<AcsDevice>>((changes) {
+      if (changes.reset) _discoveredDevices.clear();
+      for (final address in changes.lost) {
+        _discoveredDevices.remove(address);
+      }
+      for (final device in [...changes.added, ...changes.updated]) {
+        _discoveredDevices[device.address] = device;
+      }
+
+      return _discoveredDevices.values.toList();
     });
 
     return _devices!;
   }
 
+  /// The devices added, updated and lost since the previous batch, which is cheaper to follow than [devices] when
+  /// lots of devices are in range. A device is updated when its RSSI moves noticeably, or its advertising data changes.
+  static Stream<DeviceChanges> get deviceChanges {
+    _deviceChanges ??= _devicesChannel.receiveBroadcastStream().map<DeviceChanges>((data) {
+      return DeviceChanges.fromMap(data as Map<dynamic, dynamic>);
+    });
+
+    return _deviceChanges!;
+  }
+
   static Stream<String> get connectionStatus {
     _connectionStatus ??= _deviceStatusChannel.receiveBroadcastStream().map<String>((data) {
       return data as String;
@@ -49,14 +95,79 @@ class FlutterNfcAcs {
     return _connectionStatus!;
   }
 
+  // Both the card IDs and the binary responses arrive on the same channel, so they share one subscription.
+  static Stream<dynamic> get _cardChannelEvents {
+    _cardEvents ??= _deviceCardChannel.receiveBroadcastStream();
+
+    return _cardEvents!;
+  }
+
   static Stream<String> get cards {
-    _cards ??= _deviceCardChannel.receiveBroadcastStream().map<String>((data) {
-      return data as String;
+    _cards ??= _cardChannelEvents.where((data) => data is String || (data is Map && data['uid'] is String)).map<String>((data) {
+      return data is Map ? data['uid'] as String : data as String;
     });
 
     return _cards!;
   }
 
+  /// The IDs on [cards], with how many times in a row the card was seen before, if [configureRepeats] annotates them.
+  static Stream<CardSighting<String>> get cardSightings {
+    _cardSightings ??= _cardChannelEvents.where((data) => data is Map && data['uid'] is String).map<CardSighting<String>>((data) {
+      return CardSighting<String>.fromMap(data as Map<dynamic, dynamic>);
+    });
+
+    return _cardSightings!;
+  }
+
+  /// The responses to commands sent with [transmitApdu], as raw bytes.
+  static Stream<Uint8List> get cardResponses {
+    _cardResponses ??= _cardChannelEvents.where((data) => data is Uint8List).map<Uint8List>((data) {
+      return data as Uint8List;
+    });
+
+    return _cardResponses!;
+  }
+
+  /// The IDs of the cards as raw bytes, for reading as many cards per minute as the reader allows.
+  ///
+  /// While this stream is listened to, the reader is in tap mode: the IDs arrive here instead of on [cards], and the
+  /// plugin skips the string formatting and logging on the way. See [tapStats] for the throughput.
+  static Stream<Uint8List> get cardIds {
+    _cardIds ??= _cardUidChannelEvents.map<Uint8List>((data) {
+      return data is Map ? data['uid'] as Uint8List : data as Uint8List;
+    });
+
+    return _cardIds!;
+  }
+
+  /// The IDs on [cardIds], with how many times in a row the card was seen before, if [configureRepeats] annotates them.
+  static Stream<CardSighting<Uint8List>> get cardIdSightings {
+    _cardIdSightings ??= _cardUidChannelEvents.where((data) => data is Map).map<CardSighting<Uint8List>>((data) {
+      return CardSighting<Uint8List>.fromMap(data as Map<dynamic, dynamic>);
+    });
+
+    return _cardIdSightings!;
+  }
+
+  // Like _cardChannelEvents, the plain and the annotated IDs of tap mode share one subscription.
+  static Stream<dynamic> get _cardUidChannelEvents {
+    _cardUidEvents ??= _deviceCardUidChannel.receiveBroadcastStream();
+
+    return _cardUidEvents!;
+  }
+
+  /// The ID, ATR and type of each card that's tapped, so the type doesn't need to be probed with APDUs.
+  ///
+  /// While this stream is listened to, each card is powered on for its ATR when it's tapped, which takes one exchange
+  /// with the reader before anything else is sent to the card.
+  static Stream<CardInfo> get cardInfo {
+    _cardInfo ??= _deviceCardInfoChannel.receiveBroadcastStream().map<CardInfo>((data) {
+      return CardInfo.fromMap(data as Map<dynamic, dynamic>);
+    });
+
+    return _cardInfo!;
+  }
+
   static Stream<int> get batteryStatus {
     _batteryStatus ??= _deviceBatteryChannel.receiveBroadcastStream().map<int>((data) {
       return data as int;
@@ -65,6 +176,11 @@ class FlutterNfcAcs {
     return _batteryStatus!;
   }
 
+  /// Connects to the reader at [address].
+  ///
+  /// A reader that was ready before in this run of the app is brought up with fewer steps. If its link drops without
+  /// [disconnect], e.g. because it went out of range, it's reconnected as soon as it's back, and [connectionStatus]
+  /// stays [CONNECTING] until then.
   static Future<void> connect(String address) {
     return _channel.invokeMethod(CONNECT, {'address': address});
   }
@@ -73,8 +189,519 @@ class FlutterNfcAcs {
     return _channel.invokeMethod(DISCONNECT);
   }
 
+  /// Connects to the reader at [address] alongside the one of [connect], and any others connected this way, so several
+  /// readers are used at once. Each reader has its own streams and command queue, see [AcsReader].
+  static Future<AcsReader> connectReader(String address) async {
+    await _channel.invokeMethod(CONNECT_READER, {'address': address});
+    return AcsReader._(address);
+  }
+
   static Future<void> sendApdu(String data) {
     print('would send encoded apdu command: $data');
     return _channel.invokeMethod(SEND_APDU, {'data': data});
   }
+
+  /// Sends the [commands] to the next card, and emits their merged response on [cardResponses].
+  ///
+  /// The commands wait their turn in the command queue, and the future completes once they have a place in it, see
+  /// [configureCommandQueue].
+  static Future<void> transmitApdu(List<Uint8List> commands) {
+    return _transmitApdu(null, commands);
+  }
+
+  static Future<void> _transmitApdu(String? reader, List<Uint8List> commands) {
+    return _channel.invokeMethod(TRANSMIT_APDU, {'reader': reader, 'commands': commands});
+  }
+
+  /// Sends the [commands] to the next card, and completes with their merged response.
+  ///
+  /// Unlike [transmitApdu], each call gets its own response, so several calls can be awaited at once. A command that
+  /// doesn't answer 9000 stops the request, and fails the future with 'apdu_failed' and its status word.
+  ///
+  /// A [ApduPriority.bulk] request makes way for interactive requests, and for the card ID, between its commands, as
+  /// long as it can resume afterwards, see [ApduPriority].
+  ///
+  /// If [cache] is set, and the response cache is turned on with [configureResponseCache], the same commands on the
+  /// same card are answered from the cache, without a round trip to the card. Only set it for reads of data that
+  /// doesn't change.
+  static Future<Uint8List> transceive(
+    List<Uint8List> commands, {
+    ApduPriority priority = ApduPriority.interactive,
+    bool cache = false,
+  }) {
+    return _transceive(null, commands, priority, cache);
+  }
+
+  static Future<Uint8List> _transceive(String? reader, List<Uint8List> commands, ApduPriority priority, bool cache) async {
+    final response = await _channel.invokeMethod<Uint8List>(TRANSCEIVE, {
+      'reader': reader,
+      'id': _takeRequestId(),
+      'commands': commands,
+      'priority': _priorityName(priority),
+      'cache': cache,
+    });
+    return response!;
+  }
+
+  /// Runs the [steps] natively on the next card, so branching on status words doesn't need a round trip per step.
+  static Future<ApduScriptResult> runApduScript(List<ApduScriptStep> steps, {ApduPriority priority = ApduPriority.interactive}) {
+    return _runApduScript(null, steps, priority);
+  }
+
+  static Future<ApduScriptResult> _runApduScript(String? reader, List<ApduScriptStep> steps, ApduPriority priority) async {
+    final result = await _channel.invokeMethod<Map<dynamic, dynamic>>(RUN_APDU_SCRIPT, {
+      'reader': reader,
+      'id': _takeRequestId(),
+      'steps': steps.map((s) => s.toMap()).toList(),
+      'priority': _priorityName(priority),
+    });
+    return ApduScriptResult.fromMap(result!);
+  }
+
+  /// Reads the sectors [firstSector] to [lastSector] of a MIFARE Classic card on the next tap, and completes with their
+  /// blocks, 16 bytes each, in order. The sector trailers are left out unless [trailers] is set.
+  ///
+  /// The [key] is loaded into the reader's [keySlot] once per connection, and authenticates each sector as key A or B.
+  /// A failed step fails the future with 'mifare_read_failed'.
+  static Future<Uint8List> readMifareSectors(
+    Uint8List key, {
+    int firstSector = 0,
+    int lastSector = 15,
+    MifareKeyType keyType = MifareKeyType.a,
+    int keySlot = 0,
+    bool trailers = false,
+    ApduPriority priority = ApduPriority.interactive,
+  }) {
+    return _readMifareSectors(null, key, firstSector, lastSector, keyType, keySlot, trailers, priority);
+  }
+
+  static Future<Uint8List> _readMifareSectors(
+    String? reader,
+    Uint8List key,
+    int firstSector,
+    int lastSector,
+    MifareKeyType keyType,
+    int keySlot,
+    bool trailers,
+    ApduPriority priority,
+  ) async {
+    final blocks = await _channel.invokeMethod<Uint8List>(READ_MIFARE_SECTORS, {
+      'reader': reader,
+      'id': _takeRequestId(),
+      'key': key,
+      'keyType': keyType == MifareKeyType.b ? 'B' : 'A',
+      'keySlot': keySlot,
+      'firstSector': firstSector,
+      'lastSector': lastSector,
+      'trailers': trailers,
+      'priority': _priorityName(priority),
+    });
+    return blocks!;
+  }
+
+  /// Reads the NDEF message of an NFC Forum Type 2 tag, e.g. an NTAG, on the next tap, and completes with its bytes,
+  /// which are empty if the tag holds none. A failed read fails the future with 'ndef_read_failed'.
+  ///
+  /// The tag may be probed for FAST_READ, which reads a long message in one or two exchanges. By default it's only
+  /// probed if its ATR says it's a MIFARE Ultralight or an NTAG, and [fastRead] overrides that. A MIFARE Ultralight C,
+  /// which doesn't answer the probe, is never probed.
+  static Future<Uint8List> readNdef({bool? fastRead, ApduPriority priority = ApduPriority.interactive}) {
+    return _readNdef(null, fastRead, priority);
+  }
+
+  static Future<Uint8List> _readNdef(String? reader, bool? fastRead, ApduPriority priority) async {
+    final ndef = await _channel.invokeMethod<Uint8List>(READ_NDEF, {
+      'reader': reader,
+      'id': _takeRequestId(),
+      'fastRead': fastRead,
+      'priority': _priorityName(priority),
+    });
+    return ndef!;
+  }
+
+  /// Replaces the bluetooth reader with a simulated one on the next [connect], or goes back to bluetooth if [profile]
+  /// is null, which also ends a [replayTrace].
+  ///
+  /// The profile's 'preset' is one of 'instant', 'typical' (the default) and 'congested', and any of its other keys
+  /// override the preset's latencies and card traffic, e.g. {'preset': 'typical', 'apduMs': 60, 'tapIntervalMs': 200}.
+  static Future<void> useSimulatedReader(Map<String, dynamic>? profile) {
+    return _channel.invokeMethod(SIMULATE, profile);
+  }
+
+  /// Starts recording the interactions with the reader from the next [connect] into a binary trace file at [path], or
+  /// a new file in the cache directory, and returns the file's path.
+  static Future<String> startTrace([String? path]) async {
+    final tracePath = await _channel.invokeMethod<String>(START_TRACE, {'path': path});
+    return tracePath!;
+  }
+
+  /// Stops recording, and returns the path of the trace, or null if no recording was running.
+  static Future<String?> stopTrace() {
+    return _channel.invokeMethod<String>(STOP_TRACE);
+  }
+
+  /// Replaces the bluetooth reader with a replay of the trace at [path], which starts on the next [connect].
+  ///
+  /// If the plugin makes a call that the trace doesn't have next, the replay stops: the pending requests fail, and the
+  /// card and status streams emit an 'offline_reader_failed' error, before the reader disconnects.
+  ///
+  /// Call [useSimulatedReader] with null to go back to bluetooth.
+  static Future<void> replayTrace(String path) {
+    return _channel.invokeMethod(REPLAY_TRACE, {'path': path});
+  }
+
+  /// Sets the [capacity] of the queue the commands wait in for the card, and what happens to a command sent while it's
+  /// full. The [overflow] policy is one of:
+  ///  * [QueueOverflow.reject]: the new command fails with 'queue_full'.
+  ///  * [QueueOverflow.dropOldest]: the oldest command that hasn't started fails with 'command_dropped' instead, or the
+  ///    new command is rejected if they've all started.
+  ///  * [QueueOverflow.block]: the new command's future doesn't complete until there's room.
+  static Future<void> configureCommandQueue({int capacity = 32, QueueOverflow overflow = QueueOverflow.reject}) {
+    return _configureCommandQueue(null, capacity, overflow);
+  }
+
+  static Future<void> _configureCommandQueue(String? reader, int capacity, QueueOverflow overflow) {
+    return _channel.invokeMethod(CONFIGURE_QUEUE, {
+      'reader': reader,
+      'capacity': capacity,
+      'overflow': overflow.toString().split('.').last,
+    });
+  }
+
+  /// The depth of the command queue, and how long the commands waited in it.
+  static Future<CommandQueueStats> commandQueueStats() {
+    return _commandQueueStats(null);
+  }
+
+  static Future<CommandQueueStats> _commandQueueStats(String? reader) async {
+    final stats = await _channel.invokeMethod<Map<dynamic, dynamic>>(QUEUE_STATS, {'reader': reader});
+    return CommandQueueStats.fromMap(stats!);
+  }
+
+  /// Sets how long the reader gets to answer a single [command], and to finish a whole [sequence] of commands, before
+  /// the pending request fails with 'reader_timeout' and the reader is reset. A zero duration turns that deadline off.
+  /// If [reconnect] is set, the reset also reconnects to the reader.
+  static Future<void> configureTimeouts({
+    Duration command = const Duration(seconds: 2),
+    Duration sequence = const Duration(seconds: 10),
+    bool reconnect = false,
+  }) {
+    return _configureTimeouts(null, command, sequence, reconnect);
+  }
+
+  static Future<void> _configureTimeouts(String? reader, Duration command, Duration sequence, bool reconnect) {
+    return _channel.invokeMethod(CONFIGURE_TIMEOUTS, {
+      'reader': reader,
+      'commandTimeoutMs': command.inMilliseconds,
+      'sequenceTimeoutMs': sequence.inMilliseconds,
+      'reconnect': reconnect,
+    });
+  }
+
+  /// The number of cards read on [cardIds] since it was listened to, and within the last minute.
+  static Future<TapStats> tapStats() {
+    return _tapStats(null);
+  }
+
+  static Future<TapStats> _tapStats(String? reader) async {
+    final stats = await _channel.invokeMethod<Map<dynamic, dynamic>>(TAP_STATS, {'reader': reader});
+    return TapStats.fromMap(stats!);
+  }
+
+  /// Sets what [cards] and [cardIds] do with a card that's seen again within [ttl] of the last time, e.g. because it
+  /// lingers at the edge of the field. [capacity] is the number of recent cards that are remembered.
+  static Future<void> configureRepeats({
+    RepeatPolicy cards = RepeatPolicy.emit,
+    RepeatPolicy cardIds = RepeatPolicy.emit,
+    int capacity = 32,
+    Duration ttl = const Duration(seconds: 3),
+  }) {
+    return _configureRepeats(null, cards, cardIds, capacity, ttl);
+  }
+
+  static Future<void> _configureRepeats(String? reader, RepeatPolicy cards, RepeatPolicy cardIds, int capacity, Duration ttl) {
+    return _channel.invokeMethod(CONFIGURE_REPEATS, {
+      'reader': reader,
+      'cards': cards.toString().split('.').last,
+      'cardIds': cardIds.toString().split('.').last,
+      'capacity': capacity,
+      'ttlMs': ttl.inMilliseconds,
+    });
+  }
+
+  /// Turns on the response cache of [transceive], which holds up to [maxBytes] of responses, keyed by the card ID and
+  /// the commands of the request up to the one answered, for up to [ttl]. The least recently used responses are evicted
+  /// first. A [maxBytes] of 0 turns it off.
+  static Future<void> configureResponseCache({
+    required int maxBytes,
+    Duration ttl = const Duration(minutes: 10),
+  }) {
+    return _configureResponseCache(null, maxBytes, ttl);
+  }
+
+  static Future<void> _configureResponseCache(String? reader, int maxBytes, Duration ttl) {
+    return _channel.invokeMethod(CONFIGURE_RESPONSE_CACHE, {
+      'reader': reader,
+      'maxBytes': maxBytes,
+      'ttlMs': ttl.inMilliseconds,
+    });
+  }
+
+  /// The size of the response cache, and how many cacheable requests it answered.
+  static Future<ResponseCacheStats> responseCacheStats() {
+    return _responseCacheStats(null);
+  }
+
+  static Future<ResponseCacheStats> _responseCacheStats(String? reader) async {
+    final stats = await _channel.invokeMethod<Map<dynamic, dynamic>>(RESPONSE_CACHE_STATS, {'reader': reader});
+    return ResponseCacheStats.fromMap(stats!);
+  }
+
+  /// Sets what the device scan looks for, and how hard it looks. A scan that's running is restarted with it.
+  ///
+  /// The devices must advertise one of [serviceUuids] or be named one of [names], if they're given, which the bluetooth
+  /// controller filters, so other devices don't wake the app up. On top of that, their name must start with
+  /// [namePrefix], which is matched by the plugin, and defaults to 'ACR', the prefix of the ACS readers. A null prefix
+  /// matches any name. A [reportDelay] lets the controller batch the results where it can, which saves power during
+  /// long scans, and a [ScanMatchMode.sticky] match needs a stronger signal to report a device. Below Android 5, the
+  /// platform only filters the service UUIDs when no names are given, the plugin matches the rest, and the other
+  /// settings are ignored.
+  ///
+  /// A [ScanPolicy.oneShot] scan stops after [duration]. A [ScanPolicy.dutyCycle] scan listens for [scanWindow] of
+  /// every [scanInterval] until [devices] is cancelled, which finds readers continuously without keeping the radio on,
+  /// and a [ScanPolicy.opportunistic] scan only gets the results of other apps' scans. A device that isn't seen for
+  /// [deviceTtl] is lost, which defaults to 5 seconds, or twice the scan interval of a duty cycle. The plugin starts the
+  /// radio at most 5 times in 30 seconds, which is what Android allows, so a tighter duty cycle is stretched.
+  static Future<void> configureScan({
+    List<String> serviceUuids = const [],
+    List<String> names = const [],
+    String? namePrefix = 'ACR',
+    ScanMode scanMode = ScanMode.lowLatency,
+    Duration reportDelay = Duration.zero,
+    ScanMatchMode matchMode = ScanMatchMode.aggressive,
+    ScanPolicy policy = ScanPolicy.oneShot,
+    Duration duration = const Duration(seconds: 10),
+    Duration scanWindow = const Duration(seconds: 2),
+    Duration scanInterval = const Duration(seconds: 10),
+    Duration? deviceTtl,
+  }) {
+    return _channel.invokeMethod(CONFIGURE_SCAN, {
+      'serviceUuids': serviceUuids,
+      'names': names,
+      'namePrefix': namePrefix,
+      'scanMode': scanMode.toString().split('.').last,
+      'reportDelayMs': reportDelay.inMilliseconds,
+      'matchMode': matchMode.toString().split('.').last,
+      'policy': policy.toString().split('.').last,
+      'durationMs': duration.inMilliseconds,
+      'scanWindowMs': scanWindow.inMilliseconds,
+      'scanIntervalMs': scanInterval.inMilliseconds,
+      'deviceTtlMs': deviceTtl?.inMilliseconds,
+    });
+  }
+
+  static String _priorityName(ApduPriority priority) {
+    return priority == ApduPriority.bulk ? 'bulk' : 'interactive';
+  }
+
+  static int _takeRequestId() {
+    final id = _nextRequestId;
+    // Keeps the ID within 32 bits, so it's always decoded as an int on the platform side.
+    _nextRequestId = (_nextRequestId + 1) & 0x7fffffff;
+    return id;
+  }
+}
+
+/// A reader connected with [FlutterNfcAcs.connectReader], which is used alongside the others. Its streams and requests
+/// are its own, so a card on one reader doesn't wait for the commands sent to another.
+class AcsReader {
+  AcsReader._(this.address)
+      : _statusChannel = EventChannel('flutter.nuvopoint.com/nfc/acs/reader/$address/status'),
+        _cardChannel = EventChannel('flutter.nuvopoint.com/nfc/acs/reader/$address/card'),
+        _cardUidChannel = EventChannel('flutter.nuvopoint.com/nfc/acs/reader/$address/card/uid'),
+        _cardInfoChannel = EventChannel('flutter.nuvopoint.com/nfc/acs/reader/$address/card/info'),
+        _batteryChannel = EventChannel('flutter.nuvopoint.com/nfc/acs/reader/$address/battery');
+
+  final String address;
+  final EventChannel _statusChannel;
+  final EventChannel _cardChannel;
+  final EventChannel _cardUidChannel;
+  final EventChannel _cardInfoChannel;
+  final EventChannel _batteryChannel;
+  Stream<String>? _connectionStatus;
+  Stream<dynamic>? _cardEvents;
+  Stream<String>? _cards;
+  Stream<Uint8List>? _cardResponses;
+  Stream<CardSighting<String>>? _cardSightings;
+  Stream<dynamic>? _cardUidEvents;
+  Stream<Uint8List>? _cardIds;
+  Stream<CardSighting<Uint8List>>? _cardIdSightings;
+  Stream<CardInfo>? _cardInfo;
+  Stream<int>? _batteryStatus;
+
+  /// Like [FlutterNfcAcs.connectionStatus], for this reader.
+  Stream<String> get connectionStatus {
+    _connectionStatus ??= _statusChannel.receiveBroadcastStream().map<String>((data) => data as String);
+
+    return _connectionStatus!;
+  }
+
+  // Like FlutterNfcAcs._cardChannelEvents, the streams of each channel share one subscription.
+  Stream<dynamic> get _cardChannelEvents {
+    _cardEvents ??= _cardChannel.receiveBroadcastStream();
+
+    return _cardEvents!;
+  }
+
+  Stream<dynamic> get _cardUidChannelEvents {
+    _cardUidEvents ??= _cardUidChannel.receiveBroadcastStream();
+
+    return _cardUidEvents!;
+  }
+
+  /// Like [FlutterNfcAcs.cards], for this reader.
+  Stream<String> get cards {
+    _cards ??= _cardChannelEvents.where((data) => data is String || (data is Map && data['uid'] is String)).map<String>((data) {
+      return data is Map ? data['uid'] as String : data as String;
+    });
+
+    return _cards!;
+  }
+
+  /// Like [FlutterNfcAcs.cardSightings], for this reader.
+  Stream<CardSighting<String>> get cardSightings {
+    _cardSightings ??= _cardChannelEvents.where((data) => data is Map && data['uid'] is String).map<CardSighting<String>>((data) {
+      return CardSighting<String>.fromMap(data as Map<dynamic, dynamic>);
+    });
+
+    return _cardSightings!;
+  }
+
+  /// Like [FlutterNfcAcs.cardResponses], for the commands sent with [transmitApdu].
+  Stream<Uint8List> get cardResponses {
+    _cardResponses ??= _cardChannelEvents.where((data) => data is Uint8List).map<Uint8List>((data) {
+      return data as Uint8List;
+    });
+
+    return _cardResponses!;
+  }
+
+  /// Like [FlutterNfcAcs.cardIds], for this reader, which is in tap mode while it's listened to.
+  Stream<Uint8List> get cardIds {
+    _cardIds ??= _cardUidChannelEvents.map<Uint8List>((data) {
+      return data is Map ? data['uid'] as Uint8List : data as Uint8List;
+    });
+
+    return _cardIds!;
+  }
+
+  /// Like [FlutterNfcAcs.cardIdSightings], for this reader.
+  Stream<CardSighting<Uint8List>> get cardIdSightings {
+    _cardIdSightings ??= _cardUidChannelEvents.where((data) => data is Map).map<CardSighting<Uint8List>>((data) {
+      return CardSighting<Uint8List>.fromMap(data as Map<dynamic, dynamic>);
+    });
+
+    return _cardIdSightings!;
+  }
+
+  /// Like [FlutterNfcAcs.cardInfo], for this reader.
+  Stream<CardInfo> get cardInfo {
+    _cardInfo ??= _cardInfoChannel.receiveBroadcastStream().map<CardInfo>((data) {
+      return CardInfo.fromMap(data as Map<dynamic, dynamic>);
+    });
+
+    return _cardInfo!;
+  }
+
+  /// Like [FlutterNfcAcs.batteryStatus], for this reader.
+  Stream<int> get batteryStatus {
+    _batteryStatus ??= _batteryChannel.receiveBroadcastStream().map<int>((data) => data as int);
+
+    return _batteryStatus!;
+  }
+
+  /// Disconnects the reader, and ends its streams.
+  Future<void> disconnect() {
+    return FlutterNfcAcs._channel.invokeMethod(FlutterNfcAcs.DISCONNECT_READER, {'address': address});
+  }
+
+  /// Like [FlutterNfcAcs.transmitApdu], on this reader, whose responses are emitted on [cardResponses].
+  Future<void> transmitApdu(List<Uint8List> commands) {
+    return FlutterNfcAcs._transmitApdu(address, commands);
+  }
+
+  /// Like [FlutterNfcAcs.transceive], on this reader.
+  Future<Uint8List> transceive(List<Uint8List> commands, {ApduPriority priority = ApduPriority.interactive, bool cache = false}) {
+    return FlutterNfcAcs._transceive(address, commands, priority, cache);
+  }
+
+  /// Like [FlutterNfcAcs.runApduScript], on this reader.
+  Future<ApduScriptResult> runApduScript(List<ApduScriptStep> steps, {ApduPriority priority = ApduPriority.interactive}) {
+    return FlutterNfcAcs._runApduScript(address, steps, priority);
+  }
+
+  /// Like [FlutterNfcAcs.readMifareSectors], on this reader.
+  Future<Uint8List> readMifareSectors(
+    Uint8List key, {
+    int firstSector = 0,
+    int lastSector = 15,
+    MifareKeyType keyType = MifareKeyType.a,
+    int keySlot = 0,
+    bool trailers = false,
+    ApduPriority priority = ApduPriority.interactive,
+  }) {
+    return FlutterNfcAcs._readMifareSectors(address, key, firstSector, lastSector, keyType, keySlot, trailers, priority);
+  }
+
+  /// Like [FlutterNfcAcs.readNdef], on this reader.
+  Future<Uint8List> readNdef({bool? fastRead, ApduPriority priority = ApduPriority.interactive}) {
+    return FlutterNfcAcs._readNdef(address, fastRead, priority);
+  }
+
+  /// Like [FlutterNfcAcs.configureCommandQueue], for this reader's queue.
+  Future<void> configureCommandQueue({int capacity = 32, QueueOverflow overflow = QueueOverflow.reject}) {
+    return FlutterNfcAcs._configureCommandQueue(address, capacity, overflow);
+  }
+
+  /// Like [FlutterNfcAcs.commandQueueStats], for this reader's queue.
+  Future<CommandQueueStats> commandQueueStats() {
+    return FlutterNfcAcs._commandQueueStats(address);
+  }
+
+  /// Like [FlutterNfcAcs.configureTimeouts], for this reader.
+  Future<void> configureTimeouts({
+    Duration command = const Duration(seconds: 2),
+    Duration sequence = const Duration(seconds: 10),
+    bool reconnect = false,
+  }) {
+    return FlutterNfcAcs._configureTimeouts(address, command, sequence, reconnect);
+  }
+
+  /// Like [FlutterNfcAcs.tapStats], for this reader.
+  Future<TapStats> tapStats() {
+    return FlutterNfcAcs._tapStats(address);
+  }
+
+  /// Like [FlutterNfcAcs.configureRepeats], for this reader's [cards] and [cardIds].
+  Future<void> configureRepeats({
+    RepeatPolicy cards = RepeatPolicy.emit,
+    RepeatPolicy cardIds = RepeatPolicy.emit,
+    int capacity = 32,
+    Duration ttl = const Duration(seconds: 3),
+  }) {
+    return FlutterNfcAcs._configureRepeats(address, cards, cardIds, capacity, ttl);
+  }
+
+  /// Like [FlutterNfcAcs.configureResponseCache], for this reader's cache.
+  Future<void> configureResponseCache({
+    required int maxBytes,
+    Duration ttl = const Duration(minutes: 10),
+  }) {
+    return FlutterNfcAcs._configureResponseCache(address, maxBytes, ttl);
+  }
+
+  /// Like [FlutterNfcAcs.responseCacheStats], for this reader's cache.
+  Future<ResponseCacheStats> responseCacheStats() {
+    return FlutterNfcAcs._responseCacheStats(address);
+  }
 }
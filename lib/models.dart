@@ -1,12 +1,271 @@
+import 'dart:typed_data';
+
 enum AcsModel {
   ACR1255U_J1,
 }
 
 /// Describes a physical bluetooth reader, it's [name] and [address].
+///
+/// A device found by a scan also has the [rssi] and [advertisingData] of its latest reported advert, and when it was
+/// last seen, on the platform's monotonic clock.
 class AcsDevice {
-  const AcsDevice(this.address, {this.model = AcsModel.ACR1255U_J1, this.name});
+  const AcsDevice(this.address, {this.model = AcsModel.ACR1255U_J1, this.name, this.rssi, this.lastSeen, this.advertisingData});
 
   final String address;
   final String? name;
   final AcsModel model;
+  final int? rssi;
+  final Duration? lastSeen;
+  final Uint8List? advertisingData;
+
+  factory AcsDevice.fromMap(Map<dynamic, dynamic> map) {
+    return AcsDevice(
+      map['address'] as String,
+      name: map['name'] as String?,
+      rssi: map['rssi'] as int?,
+      lastSeen: map['lastSeenMs'] == null ? null : Duration(milliseconds: map['lastSeenMs'] as int),
+      advertisingData: map['advertisingData'] as Uint8List?,
+    );
+  }
+}
+
+/// What changed about the devices found by a scan since the previous batch, see [FlutterNfcAcs.deviceChanges]. If
+/// [reset] is set, a new scan started, and the devices found before are gone.
+class DeviceChanges {
+  const DeviceChanges(this.added, this.updated, this.lost, this.reset);
+
+  final List<AcsDevice> added;
+  final List<AcsDevice> updated;
+  final List<String> lost;
+  final bool reset;
+
+  factory DeviceChanges.fromMap(Map<dynamic, dynamic> map) {
+    return DeviceChanges(
+      (map['added'] as List<dynamic>).map((d) => AcsDevice.fromMap(d as Map<dynamic, dynamic>)).toList(),
+      (map['updated'] as List<dynamic>).map((d) => AcsDevice.fromMap(d as Map<dynamic, dynamic>)).toList(),
+      (map['lost'] as List<dynamic>).cast<String>(),
+      map['reset'] as bool,
+    );
+  }
+}
+
+/// A step of a script that is run natively by [FlutterNfcAcs.runApduScript].
+///
+/// A step index of -1, or past the last step, ends the script successfully.
+class ApduScriptStep {
+  const ApduScriptStep(
+    this.command, {
+    this.expect = const [0x9000],
+    this.next,
+    this.onMismatch,
+    this.branches = const {},
+    this.substitutions = const [],
+  });
+
+  final Uint8List command;
+
+  /// The accepted status words.
+  final List<int> expect;
+
+  /// The step to run when the status word is accepted. Defaults to the following step.
+  final int? next;
+
+  /// The step to run when the status word isn't accepted. If null, the script stops and fails.
+  final int? onMismatch;
+
+  /// Maps status words to the step to run next, which takes precedence over [next] and [onMismatch].
+  final Map<int, int> branches;
+
+  final List<ApduSubstitution> substitutions;
+
+  Map<String, dynamic> toMap() {
+    return {
+      'command': command,
+      'expect': expect,
+      if (next != null) 'next': next,
+      if (onMismatch != null) 'onMismatch': onMismatch,
+      'branches': branches,
+      'substitutions': substitutions.map((s) => s.toMap()).toList(),
+    };
+  }
+}
+
+/// Copies [length] bytes at [offset] of the response data of [step] into a command at [position].
+class ApduSubstitution {
+  const ApduSubstitution({required this.step, required this.offset, required this.length, required this.position});
+
+  final int step;
+  final int offset;
+  final int length;
+  final int position;
+
+  Map<String, int> toMap() => {'step': step, 'offset': offset, 'length': length, 'position': position};
+}
+
+/// The response to a single step of a script, without the status word in [data].
+class ApduStepResponse {
+  const ApduStepResponse(this.step, this.sw, this.data);
+
+  final int step;
+  final int sw;
+  final Uint8List data;
+}
+
+/// The outcome of a script. If it didn't succeed, [failedStep] is the step that stopped it.
+class ApduScriptResult {
+  const ApduScriptResult(this.success, this.failedStep, this.steps, {this.error});
+
+  final bool success;
+  final int failedStep;
+  final List<ApduStepResponse> steps;
+  final String? error;
+
+  factory ApduScriptResult.fromMap(Map<dynamic, dynamic> map) {
+    return ApduScriptResult(
+      map['success'] as bool,
+      map['failedStep'] as int,
+      (map['steps'] as List<dynamic>).map((s) => ApduStepResponse(s['step'] as int, s['sw'] as int, s['data'] as Uint8List)).toList(),
+      error: map['error'] as String?,
+    );
+  }
+}
+
+/// The lane a request waits in. Interactive requests, e.g. access checks, go ahead of bulk requests, e.g. reading a
+/// whole file. A bulk request that has only selected and read so far makes way for them between its commands, and
+/// picks up where it left off once they're done, selecting its file again first. One that has sent anything else, or
+/// was preempted 16 times already, runs to the end.
+enum ApduPriority { interactive, bulk }
+
+/// Which of a MIFARE Classic sector's keys authenticates it.
+enum MifareKeyType { a, b }
+
+/// What happens to a command sent while the command queue is full, see [FlutterNfcAcs.configureCommandQueue].
+enum QueueOverflow { reject, dropOldest, block }
+
+/// How much of the time the device scan listens, see [FlutterNfcAcs.configureScan]. [lowLatency] finds devices the
+/// fastest, and uses the most power.
+enum ScanMode { lowPower, balanced, lowLatency }
+
+/// How readily the device scan reports a device, see [FlutterNfcAcs.configureScan]. [sticky] needs a stronger signal,
+/// and more adverts, than [aggressive].
+enum ScanMatchMode { aggressive, sticky }
+
+/// When the device scan listens, see [FlutterNfcAcs.configureScan].
+enum ScanPolicy { oneShot, dutyCycle, opportunistic }
+
+/// A snapshot of the command queue. [depth] includes the command being sent, [bulkDepth] is the part of it in the bulk
+/// lane, and [blocked] counts the commands waiting for room with [QueueOverflow.block].
+class CommandQueueStats {
+  const CommandQueueStats(this.depth, this.bulkDepth, this.blocked, this.capacity, this.started, this.averageWaitMs, this.maxWaitMs, this.oldestWaitMs);
+
+  final int depth;
+  final int bulkDepth;
+  final int blocked;
+  final int capacity;
+  final int started;
+  final int averageWaitMs;
+  final int maxWaitMs;
+  final int oldestWaitMs;
+
+  factory CommandQueueStats.fromMap(Map<dynamic, dynamic> map) {
+    return CommandQueueStats(
+      map['depth'] as int,
+      map['bulkDepth'] as int,
+      map['blocked'] as int,
+      map['capacity'] as int,
+      map['started'] as int,
+      map['averageWaitMs'] as int,
+      map['maxWaitMs'] as int,
+      map['oldestWaitMs'] as int,
+    );
+  }
+}
+
+/// The throughput of [FlutterNfcAcs.cardIds]. [averageTapMs] is the time from a card being detected to its ID being
+/// emitted.
+class TapStats {
+  const TapStats(this.cards, this.cardsPerMinute, this.averageTapMs);
+
+  final int cards;
+  final int cardsPerMinute;
+  final int averageTapMs;
+
+  factory TapStats.fromMap(Map<dynamic, dynamic> map) {
+    return TapStats(map['cards'] as int, map['cardsPerMinute'] as int, map['averageTapMs'] as int);
+  }
+}
+
+/// The state of the response cache, see [FlutterNfcAcs.configureResponseCache]. A hit is a request that was answered
+/// from the cache, and a miss one that went to the card.
+class ResponseCacheStats {
+  const ResponseCacheStats(this.entries, this.bytes, this.maxBytes, this.hits, this.misses);
+
+  final int entries;
+  final int bytes;
+  final int maxBytes;
+  final int hits;
+  final int misses;
+
+  factory ResponseCacheStats.fromMap(Map<dynamic, dynamic> map) {
+    return ResponseCacheStats(
+      map['entries'] as int,
+      map['bytes'] as int,
+      map['maxBytes'] as int,
+      map['hits'] as int,
+      map['misses'] as int,
+    );
+  }
+}
+
+/// The type of a card, as told by its ATR.
+enum CardType {
+  mifareClassic1k,
+  mifareClassic4k,
+  mifareMini,
+  mifareUltralight,
+  mifareUltralightC,
+  mifarePlus2k,
+  mifarePlus4k,
+  desfire,
+  topaz,
+  felica,
+  iso14443Part4,
+  unknown,
+}
+
+/// A card that was tapped, see [FlutterNfcAcs.cardInfo]. The [uid] or [atr] is null if it couldn't be read.
+class CardInfo {
+  const CardInfo(this.uid, this.atr, this.type, this.detectedAt);
+
+  final Uint8List? uid;
+  final Uint8List? atr;
+  final CardType type;
+  /// When the card was detected, on the platform's monotonic clock.
+  final Duration detectedAt;
+
+  factory CardInfo.fromMap(Map<dynamic, dynamic> map) {
+    final type = map['type'] as String;
+    return CardInfo(
+      map['uid'] as Uint8List?,
+      map['atr'] as Uint8List?,
+      CardType.values.firstWhere((t) => t.toString().split('.').last == type, orElse: () => CardType.unknown),
+      Duration(milliseconds: map['detectedAtMs'] as int),
+    );
+  }
+}
+
+/// What a card stream does with a card that's seen again shortly after, see [FlutterNfcAcs.configureRepeats]:
+/// [emit] it like a new card, [suppress] it, or [annotate] it with a repeat count on the sightings streams.
+enum RepeatPolicy { emit, suppress, annotate }
+
+/// A card ID, and how many times in a row the card was seen before, which is 0 for a new card.
+class CardSighting<T> {
+  const CardSighting(this.uid, this.repeat);
+
+  final T uid;
+  final int repeat;
+
+  factory CardSighting.fromMap(Map<dynamic, dynamic> map) {
+    return CardSighting<T>(map['uid'] as T, map['repeat'] as int);
+  }
 }